@@ -15,23 +15,44 @@
  */
 package it.imolinfo.maven.plugins.jboss.fuse;
 
+import it.imolinfo.maven.plugins.jboss.fuse.options.ExtractionPreset;
 import it.imolinfo.maven.plugins.jboss.fuse.utils.ArchiveManager;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.Checksums;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.InstanceManifest;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.SystemRepository;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.net.URLConnection;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.SystemUtils;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.settings.Settings;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import static org.awaitility.Awaitility.await;
@@ -56,25 +77,30 @@ public abstract class AbstractGoal extends AbstractMojo {
 
     }
     
-    protected static final String JBOSS_FUSE_ZIP_FILE = "jboss-fuse-full-6.2.1.redhat-083.zip";
+    protected static final String DEFAULT_JBOSS_FUSE_VERSION = "6.2.1.redhat-083";
     protected static final String JBOSS_FUSE_DOWNLOAD_DIRECTORY = "it/imolinfo/maven/plugins/jboss-fuse-maven-plugin";
-    protected static final String JBOSS_FUSE_DIRECTORY_NAME = "jboss-fuse-6.2.1.redhat-083";
+    protected static final String JBOSS_FUSE_REPOSITORY_ID = "jboss-fuse-distribution";
     protected static final File TARGET_DIRECTORY = new File("target");
-    protected static final File JBOSS_FUSE_DIRECTORY = new File(String.format("target/%s", JBOSS_FUSE_DIRECTORY_NAME));
-    protected static final File JBOSS_FUSE_ETC_DIRECTORY = new File(String.format("%s/etc", JBOSS_FUSE_DIRECTORY.getAbsolutePath()));
-    protected static final File JBOSS_FUSE_LOG_DIRECTORY = new File(String.format("%s/data/log", JBOSS_FUSE_DIRECTORY.getAbsolutePath()));
-    protected static final File JBOSS_FUSE_BIN_DIRECTORY = new File(String.format("%s/bin", JBOSS_FUSE_DIRECTORY.getAbsolutePath()));
-    protected static final File JBOSS_FUSE_DEPLOY_DIRECTORY = new File(String.format("%s/deploy", JBOSS_FUSE_DIRECTORY.getAbsolutePath()));
+    protected static String JBOSS_FUSE_DIRECTORY_NAME;
+    protected static File JBOSS_FUSE_DIRECTORY;
+    protected static File JBOSS_FUSE_ETC_DIRECTORY;
+    protected static File JBOSS_FUSE_LOG_DIRECTORY;
+    protected static File JBOSS_FUSE_BIN_DIRECTORY;
+    protected static File JBOSS_FUSE_DEPLOY_DIRECTORY;
     protected static final Integer TIMEOUT = 60000;
     //TIMEOUT
     protected static final Long DEFAULT_STOP_TIMEOUT = 20000L;
     protected static final Long DOWNLOAD_SLEEP = 1000L;
     //CMD
-    protected static final String START_CMD = SystemUtils.IS_OS_WINDOWS ? String.format("%s/start.bat", JBOSS_FUSE_BIN_DIRECTORY.getAbsolutePath()) : String.format("%s/start", JBOSS_FUSE_BIN_DIRECTORY.getAbsolutePath());
-    protected static final String STOP_CMD = SystemUtils.IS_OS_WINDOWS ? String.format("%s/stop.bat", JBOSS_FUSE_BIN_DIRECTORY.getAbsolutePath()) : String.format("%s/stop", JBOSS_FUSE_BIN_DIRECTORY.getAbsolutePath());
+    protected static String START_CMD;
+    protected static String STOP_CMD;
+    static {
+        layout(DEFAULT_JBOSS_FUSE_VERSION);
+    }
 
     protected static final String JAR = "jar";
     private static final Long MB = 1024 * 1024L;
+    private static final Integer SHA1_LENGTH = 40;
 
     protected static File JBOSS_FUSE_REPOSITORY_DIRECTORY;
 
@@ -82,11 +108,71 @@ public abstract class AbstractGoal extends AbstractMojo {
     protected Settings settings;
     @Parameter(defaultValue = "${project}", required = true, readonly = true)
     protected MavenProject project;
-    @Parameter(defaultValue = "https://repository.jboss.org/nexus/content/groups/ea/org/jboss/fuse/jboss-fuse-full/6.2.1.redhat-083/jboss-fuse-full-6.2.1.redhat-083.zip", required = true, readonly = true)
+    @Parameter(defaultValue = "${session}", readonly = true)
+    protected MavenSession session;
+    @Parameter(defaultValue = "${plugin}", readonly = true)
+    protected PluginDescriptor plugin;
+    @Parameter(defaultValue = "false")
+    protected Boolean reactorMode;
+    @Parameter(defaultValue = "${repositorySystemSession}", readonly = true)
+    protected RepositorySystemSession repositorySession;
+    @Parameter(defaultValue = "${project.remoteProjectRepositories}", readonly = true)
+    protected List<RemoteRepository> remoteRepositories;
+    @Parameter(defaultValue = "org.jboss.fuse")
+    protected String jbossFuseGroupId;
+    @Parameter(defaultValue = "jboss-fuse-full")
+    protected String jbossFuseArtifactId;
+    @Parameter(defaultValue = DEFAULT_JBOSS_FUSE_VERSION)
+    protected String jbossFuseVersion;
+    @Parameter
+    protected String jbossFuseClassifier;
+    @Parameter(defaultValue = "zip")
+    protected String jbossFuseType;
+    @Parameter(defaultValue = "https://repository.jboss.org/nexus/content/groups/ea")
+    protected String jbossFuseRepositoryUrl;
+    @Parameter
     protected String jbossFuseDownloadUrl;
+    @Parameter
+    protected String jbossFuseDownloadChecksum;
+    @Parameter(defaultValue = "FULL")
+    protected ExtractionPreset extractionPreset;
+    @Parameter
+    protected String extractionIncludes;
+    @Parameter
+    protected String extractionExcludes;
+    @Parameter(defaultValue = "false")
+    protected Boolean sharedSystemRepository;
+    @Parameter
+    protected File sharedSystemRepositoryDirectory;
+    @Parameter(defaultValue = "true")
+    protected Boolean instanceReset;
+
+    @Component
+    protected RepositorySystem repositorySystem;
 
     private Boolean downloadCompleted = Boolean.FALSE;
 
+    /**
+     * Points the instance directories to the extraction directory of the
+     * configured distribution version
+     */
+    protected void initLayout() {
+        if (jbossFuseVersion != null) {
+            layout(jbossFuseVersion);
+        }
+    }
+
+    private static void layout(String version) {
+        JBOSS_FUSE_DIRECTORY_NAME = String.format("jboss-fuse-%s", version);
+        JBOSS_FUSE_DIRECTORY = new File(String.format("target/%s", JBOSS_FUSE_DIRECTORY_NAME));
+        JBOSS_FUSE_ETC_DIRECTORY = new File(String.format("%s/etc", JBOSS_FUSE_DIRECTORY.getAbsolutePath()));
+        JBOSS_FUSE_LOG_DIRECTORY = new File(String.format("%s/data/log", JBOSS_FUSE_DIRECTORY.getAbsolutePath()));
+        JBOSS_FUSE_BIN_DIRECTORY = new File(String.format("%s/bin", JBOSS_FUSE_DIRECTORY.getAbsolutePath()));
+        JBOSS_FUSE_DEPLOY_DIRECTORY = new File(String.format("%s/deploy", JBOSS_FUSE_DIRECTORY.getAbsolutePath()));
+        START_CMD = SystemUtils.IS_OS_WINDOWS ? String.format("%s/start.bat", JBOSS_FUSE_BIN_DIRECTORY.getAbsolutePath()) : String.format("%s/start", JBOSS_FUSE_BIN_DIRECTORY.getAbsolutePath());
+        STOP_CMD = SystemUtils.IS_OS_WINDOWS ? String.format("%s/stop.bat", JBOSS_FUSE_BIN_DIRECTORY.getAbsolutePath()) : String.format("%s/stop", JBOSS_FUSE_BIN_DIRECTORY.getAbsolutePath());
+    }
+
     protected void initBinDirectory() {
         for (File binFile : JBOSS_FUSE_BIN_DIRECTORY.listFiles()) {
             binFile.setExecutable(Boolean.TRUE);
@@ -94,47 +180,203 @@ public abstract class AbstractGoal extends AbstractMojo {
     }
 
     protected void download() throws MojoExecutionException {
-        String localRepository = settings.getLocalRepository();
-        String fuseDownloadDirectoryPath = String.format("%s/%s", localRepository, JBOSS_FUSE_DOWNLOAD_DIRECTORY);
-        File fuseZipFile = new File(String.format("%s/%s", fuseDownloadDirectoryPath, JBOSS_FUSE_ZIP_FILE));
-        if (!fuseZipFile.exists()) {
+        File fuseZipFile;
+        if (jbossFuseDownloadUrl != null) {
+            String localRepository = settings.getLocalRepository();
+            String fuseDownloadDirectoryPath = String.format("%s/%s", localRepository, JBOSS_FUSE_DOWNLOAD_DIRECTORY);
+            fuseZipFile = new File(String.format("%s/%s", fuseDownloadDirectoryPath, jbossFuseDownloadUrl.substring(jbossFuseDownloadUrl.lastIndexOf('/') + 1)));
             try {
-                download(fuseZipFile);
+                if (!fuseZipFile.exists() || !verify(fuseZipFile)) {
+                    download(fuseZipFile);
+                }
             } catch (IOException ex) {
                 throw new MojoExecutionException(ex.getMessage(), ex);
             }
+        } else {
+            fuseZipFile = resolveDistribution();
         }
 
         extractArchive(fuseZipFile);
     }
 
+    private File resolveDistribution() throws MojoExecutionException {
+        Artifact artifact = new DefaultArtifact(jbossFuseGroupId, jbossFuseArtifactId, jbossFuseClassifier, jbossFuseType, jbossFuseVersion);
+        List<RemoteRepository> repositories = new ArrayList<>(remoteRepositories);
+        if (jbossFuseRepositoryUrl != null) {
+            repositories.add(new RemoteRepository.Builder(JBOSS_FUSE_REPOSITORY_ID, "default", jbossFuseRepositoryUrl).build());
+        }
+        ArtifactRequest request = new ArtifactRequest(artifact, repositorySystem.newResolutionRepositories(repositorySession, repositories), null);
+        LOG.info("Resolve {}", artifact);
+        try {
+            return repositorySystem.resolveArtifact(repositorySession, request).getArtifact().getFile();
+        } catch (ArtifactResolutionException ex) {
+            throw new MojoExecutionException(ex.getMessage(), ex);
+        }
+    }
+
     private void download(File fuseZipFile) throws IOException {
+        String expectedChecksum = expectedChecksum();
         File tmpFile = File.createTempFile("fuse", ".temp");
         LOG.info("Download {} in {}...", jbossFuseDownloadUrl, tmpFile.getAbsolutePath());
         URL url = new URL(jbossFuseDownloadUrl);
         URLConnection connection = url.openConnection();
-        try (InputStream inputStream = connection.getInputStream(); FileOutputStream downloadOutputStream = new FileOutputStream(tmpFile)) {
-            Long contentLength = connection.getContentLengthLong();
+        Long contentLength;
+        // Both digests are computed while the bytes are copied, so the archive is never read twice
+        MessageDigest sha1 = Checksums.digest(Checksums.SHA1);
+        MessageDigest sha256 = Checksums.digest(Checksums.SHA256);
+        try (InputStream inputStream = new DigestInputStream(new DigestInputStream(connection.getInputStream(), sha1), sha256);
+                FileOutputStream downloadOutputStream = new FileOutputStream(tmpFile)) {
+            contentLength = connection.getContentLengthLong();
             new Thread(new DownloadProgress(tmpFile, contentLength)).start();
             IOUtils.copyLarge(inputStream, downloadOutputStream);
             downloadOutputStream.flush();
         } finally {
             downloadCompleted = Boolean.TRUE;
         }
+        Long length = tmpFile.length();
+        if (contentLength >= 0 && length != contentLength.longValue()) {
+            tmpFile.delete();
+            throw new IOException(String.format("Truncated download of %s: %d of %d bytes", jbossFuseDownloadUrl, length, contentLength));
+        }
+        String sha1Checksum = Checksums.hex(sha1.digest());
+        String sha256Checksum = Checksums.hex(sha256.digest());
+        if (expectedChecksum != null && !expectedChecksum.equalsIgnoreCase(expectedChecksum.length() == SHA1_LENGTH ? sha1Checksum : sha256Checksum)) {
+            tmpFile.delete();
+            throw new IOException(String.format("Checksum mismatch for %s: expected %s, sha1 %s, sha256 %s", jbossFuseDownloadUrl, expectedChecksum, sha1Checksum, sha256Checksum));
+        }
         FileUtils.moveFile(tmpFile, fuseZipFile);
-        LOG.info("Download completed");
+        writeChecksums(fuseZipFile, sha1Checksum, sha256Checksum);
+        LOG.info("Download completed, sha256 {}", sha256Checksum);
     }
 
-    private static void extractArchive(File zipFile) throws MojoExecutionException {
+    /**
+     * Checks a cached archive: an archive with stored digests has been
+     * verified when downloaded and is compared with the configured checksum
+     * only, an archive without them is hashed once
+     *
+     * @param fuseZipFile Cached archive
+     * @return false if the archive does not match the expected checksum and
+     * has been deleted
+     */
+    private Boolean verify(File fuseZipFile) throws IOException {
+        String expectedChecksum = jbossFuseDownloadChecksum != null ? jbossFuseDownloadChecksum.trim() : null;
+        String sha1Checksum = storedChecksum(checksumFile(fuseZipFile, Checksums.SHA1));
+        String sha256Checksum = storedChecksum(checksumFile(fuseZipFile, Checksums.SHA256));
+        Boolean stored = sha1Checksum != null && sha256Checksum != null;
+        if (!stored) {
+            expectedChecksum = expectedChecksum();
+            String[] checksums = Checksums.checksums(fuseZipFile, Checksums.SHA1, Checksums.SHA256);
+            sha1Checksum = checksums[0];
+            sha256Checksum = checksums[1];
+        }
+        if (expectedChecksum == null || expectedChecksum.equalsIgnoreCase(expectedChecksum.length() == SHA1_LENGTH ? sha1Checksum : sha256Checksum)) {
+            if (!stored) {
+                writeChecksums(fuseZipFile, sha1Checksum, sha256Checksum);
+            }
+            return Boolean.TRUE;
+        }
+        LOG.warn("{} does not match checksum {}, download it again", fuseZipFile.getAbsolutePath(), expectedChecksum);
+        deleteArchive(fuseZipFile);
+        return Boolean.FALSE;
+    }
+
+    /**
+     * The configured checksum, otherwise the one published next to the
+     * download url as .sha256 or .sha1
+     */
+    private String expectedChecksum() {
+        if (jbossFuseDownloadChecksum != null) {
+            return jbossFuseDownloadChecksum.trim();
+        }
+        for (String extension : new String[]{".sha256", ".sha1"}) {
+            try {
+                String published = IOUtils.toString(new URL(jbossFuseDownloadUrl + extension), "UTF-8").trim();
+                if (!published.isEmpty()) {
+                    LOG.info("Checksum published in {}{}", jbossFuseDownloadUrl, extension);
+                    return published.split("\\s+")[0];
+                }
+            } catch (IOException ex) {
+                LOG.debug(ex.getMessage(), ex);
+            }
+        }
+        LOG.warn("No checksum for {}", jbossFuseDownloadUrl);
+        return null;
+    }
+
+    private static File checksumFile(File fuseZipFile, String algorithm) {
+        return new File(String.format("%s.%s", fuseZipFile.getPath(), algorithm.replace("-", "").toLowerCase()));
+    }
+
+    private static String storedChecksum(File checksumFile) throws IOException {
+        return checksumFile.exists() ? FileUtils.readFileToString(checksumFile, "UTF-8").trim().split("\\s+")[0] : null;
+    }
+
+    private static void writeChecksums(File fuseZipFile, String sha1Checksum, String sha256Checksum) throws IOException {
+        FileUtils.write(checksumFile(fuseZipFile, Checksums.SHA1), String.format("%s  %s%n", sha1Checksum, fuseZipFile.getName()), "UTF-8");
+        FileUtils.write(checksumFile(fuseZipFile, Checksums.SHA256), String.format("%s  %s%n", sha256Checksum, fuseZipFile.getName()), "UTF-8");
+    }
+
+    private static void deleteArchive(File fuseZipFile) {
+        fuseZipFile.delete();
+        checksumFile(fuseZipFile, Checksums.SHA1).delete();
+        checksumFile(fuseZipFile, Checksums.SHA256).delete();
+    }
+
+    private void extractArchive(File zipFile) throws MojoExecutionException {
+        List<String> excludes = new ArrayList<>(Arrays.asList(extractionPreset.getExcludes()));
+        excludes.addAll(split(extractionExcludes));
+        List<String> includes = split(extractionIncludes);
+        if (sharedSystemRepository) {
+            excludes.add(String.format("*/%s/**", SystemRepository.SYSTEM_DIRECTORY_NAME));
+        }
         try {
-            ArchiveManager.extract(zipFile.getAbsolutePath(), TARGET_DIRECTORY.getAbsolutePath());
+            String settingsHash = Checksums.sha1(String.format("%s;%d;%d;%s;%s;%s", zipFile.getAbsolutePath(), zipFile.length(),
+                    zipFile.lastModified(), includes, excludes, sharedSystemRepository));
+            Set<String> restore = Boolean.TRUE.equals(instanceReset) ? InstanceManifest.reset(JBOSS_FUSE_DIRECTORY, settingsHash,
+                    sharedSystemRepository ? new String[]{SystemRepository.SYSTEM_DIRECTORY_NAME} : new String[0]) : null;
+            if (restore != null) {
+                if (!restore.isEmpty()) {
+                    Set<String> entries = new HashSet<>();
+                    for (String relativePath : restore) {
+                        entries.add(String.format("%s/%s", JBOSS_FUSE_DIRECTORY_NAME, relativePath));
+                    }
+                    ArchiveManager.extract(zipFile.getAbsolutePath(), TARGET_DIRECTORY.getAbsolutePath(), entries);
+                }
+            } else {
+                InstanceManifest.delete(JBOSS_FUSE_DIRECTORY);
+                ArchiveManager.extract(zipFile.getAbsolutePath(), TARGET_DIRECTORY.getAbsolutePath(),
+                        includes.toArray(new String[includes.size()]), excludes.toArray(new String[excludes.size()]));
+                if (Boolean.TRUE.equals(instanceReset) && JBOSS_FUSE_DIRECTORY.isDirectory()) {
+                    InstanceManifest.write(JBOSS_FUSE_DIRECTORY, settingsHash);
+                }
+            }
+            if (sharedSystemRepository) {
+                File sharedDirectory = sharedSystemRepositoryDirectory != null ? sharedSystemRepositoryDirectory
+                        : new File(String.format("%s/%s/shared", settings.getLocalRepository(), JBOSS_FUSE_DOWNLOAD_DIRECTORY));
+                SystemRepository.link(JBOSS_FUSE_DIRECTORY, SystemRepository.extract(zipFile, sharedDirectory, JBOSS_FUSE_DIRECTORY_NAME));
+            }
+            if (JBOSS_FUSE_DIRECTORY.isDirectory()) {
+                LOG.info("{} size {} MB", JBOSS_FUSE_DIRECTORY.getAbsolutePath(), FileUtils.sizeOfDirectory(JBOSS_FUSE_DIRECTORY) / MB);
+            }
         } catch (MojoExecutionException ex) {
             LOG.error(ex.getMessage(), ex);
-            zipFile.delete();
+            deleteArchive(zipFile);
             throw ex;
         }
     }
 
+    protected static List<String> split(String values) {
+        List<String> result = new ArrayList<>();
+        if (values != null) {
+            for (String value : values.split(",")) {
+                if (!value.trim().isEmpty()) {
+                    result.add(value.trim());
+                }
+            }
+        }
+        return result;
+    }
+
     class DownloadProgress implements Runnable {
 
         private final File downloadFile;
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse;
+
+import it.imolinfo.maven.plugins.jboss.fuse.options.LaunchMode;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.ExceptionManager;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.KarafJMXConnector;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.KarafProcess;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.ProcessMemory;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.Statistics;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.SystemRepository;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.management.MalformedObjectNameException;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs start and shutdown cycles, cold (fresh extraction, shared system
+ * repository and deployment plan) and warm (reused ones), and reports the
+ * distribution of every phase. The cycles are not recorded in the startup
+ * history.
+ *
+ * @author giacomo
+ */
+@Mojo(name = "benchmark", requiresProject = false)
+public class Benchmark extends Start {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Benchmark.class);
+
+    private static final String REPORT_FILE_NAME = "fuse-benchmark.json";
+    private static final String COLD = "cold";
+    private static final String WARM = "warm";
+    private static final String PEAK_RSS = "peakRss";
+    private static final double[] PERCENTILES = {0, 50, 95, 100};
+    private static final String[] PERCENTILE_NAMES = {"min", "median", "p95", "max"};
+    private static final Long MB = 1024 * 1024L;
+    // Shared system repository of the cold cycles, the one of the other builds is left alone
+    private static final File COLD_SHARED_DIRECTORY = new File(TARGET_DIRECTORY, "fuse-benchmark-shared");
+
+    @Parameter(defaultValue = "5")
+    private Integer benchmarkIterations;
+
+    @Parameter(defaultValue = "1")
+    private Integer benchmarkWarmup;
+
+    @Parameter(defaultValue = "cold,warm")
+    private String benchmarkModes;
+
+    private File sharedDirectory;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        sharedDirectory = sharedSystemRepositoryDirectory;
+        Map<String, Map<String, List<Long>>> results = new LinkedHashMap<>();
+        for (String mode : split(benchmarkModes)) {
+            ExceptionManager.throwMojoExecutionException(!COLD.equals(mode) && !WARM.equals(mode), String.format("Invalid benchmark mode %s", mode));
+            Map<String, List<Long>> samples = new LinkedHashMap<>();
+            for (int i = 0; i < benchmarkWarmup + benchmarkIterations; i++) {
+                Boolean warmup = i < benchmarkWarmup;
+                LOG.info("Benchmark {} {} {}", mode, warmup ? "warm-up" : "iteration", warmup ? i + 1 : i - benchmarkWarmup + 1);
+                Map<String, Long> cycle = cycle(COLD.equals(mode));
+                if (!warmup) {
+                    cycle.forEach((phase, value) -> samples.computeIfAbsent(phase, key -> new ArrayList<>()).add(value));
+                }
+            }
+            results.put(mode, samples);
+        }
+        report(results);
+    }
+
+    private Map<String, Long> cycle(Boolean cold) throws MojoExecutionException, MojoFailureException {
+        initLayout();
+        // Cold cycles would fail the startup regression gate
+        startupHistory = Boolean.FALSE;
+        sharedSystemRepositoryDirectory = cold ? COLD_SHARED_DIRECTORY : sharedDirectory;
+        if (cold) {
+            FileUtils.deleteQuietly(JBOSS_FUSE_DIRECTORY);
+            FileUtils.deleteQuietly(deploymentPlanLockFile());
+            SystemRepository.delete(COLD_SHARED_DIRECTORY);
+        }
+
+        timings.clear();
+        Long startTime = System.currentTimeMillis();
+        super.execute();
+        Long peakRss = peakRss();
+        Long shutdownStartTime = System.currentTimeMillis();
+        new Shutdown().execute();
+        // The script launch mode only asks the container to stop
+        KarafProcess.awaitPorts();
+        Map<String, Long> cycle = new LinkedHashMap<>(timings);
+        cycle.put("shutdown", System.currentTimeMillis() - shutdownStartTime);
+        cycle.put("cycle", System.currentTimeMillis() - startTime);
+        if (peakRss != null) {
+            cycle.put(PEAK_RSS, peakRss);
+        }
+        return cycle;
+    }
+
+    private Long peakRss() {
+        if (launchMode == LaunchMode.EMBEDDED) {
+            return null;
+        }
+        try {
+            Long pid = KarafProcess.getPid() != null ? KarafProcess.getPid() : ProcessMemory.pid(KarafJMXConnector.getInstance(DEFAULT_STOP_TIMEOUT).getConnection());
+            return ProcessMemory.peakRss(pid);
+        } catch (IOException | MalformedObjectNameException ex) {
+            LOG.debug(ex.getMessage(), ex);
+            return null;
+        }
+    }
+
+    private void report(Map<String, Map<String, List<Long>>> results) throws MojoExecutionException {
+        StringBuilder table = new StringBuilder(String.format("%-6s %-50s %10s %10s %10s %10s%n", "mode", "phase (ms, peakRss MB)", "min", "median", "p95", "max"));
+        List<String> modes = new ArrayList<>();
+        for (Map.Entry<String, Map<String, List<Long>>> mode : results.entrySet()) {
+            List<String> phases = new ArrayList<>();
+            for (Map.Entry<String, List<Long>> phase : mode.getValue().entrySet()) {
+                double scale = PEAK_RSS.equals(phase.getKey()) ? MB : 1;
+                table.append(String.format("%-6s %-50s", mode.getKey(), phase.getKey()));
+                List<String> values = new ArrayList<>();
+                for (int i = 0; i < PERCENTILES.length; i++) {
+                    Double value = Statistics.percentile(phase.getValue(), PERCENTILES[i]);
+                    table.append(String.format(" %10.0f", value / scale));
+                    values.add(String.format("\"%s\":%d", PERCENTILE_NAMES[i], value.longValue()));
+                }
+                table.append(String.format("%n"));
+                phases.add(String.format("\"%s\":{\"samples\":%d,%s}", StringEscapeUtils.escapeJson(phase.getKey()), phase.getValue().size(), String.join(",", values)));
+            }
+            modes.add(String.format("\"%s\":{%s}", mode.getKey(), String.join(",", phases)));
+        }
+        LOG.info("\n{}", table);
+        String json = String.format("{\"iterations\":%d,\"warmup\":%d,\"modes\":{%s}}%n", benchmarkIterations, benchmarkWarmup, String.join(",", modes));
+        File reportFile = new File(TARGET_DIRECTORY, REPORT_FILE_NAME);
+        try {
+            FileUtils.write(reportFile, json, "UTF-8");
+        } catch (IOException ex) {
+            throw new MojoExecutionException(ex.getMessage(), ex);
+        }
+        LOG.info("Benchmark report written in {}", reportFile.getAbsolutePath());
+    }
+
+}
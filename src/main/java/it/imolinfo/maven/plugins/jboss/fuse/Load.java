@@ -0,0 +1,227 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse;
+
+import it.imolinfo.maven.plugins.jboss.fuse.options.Endpoint;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.ExceptionManager;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drives the configured HTTP endpoints of the container between start and
+ * shutdown and reports latency percentiles and throughput.
+ *
+ * @author giacomo
+ */
+@Mojo(name = "load", requiresProject = false, defaultPhase = LifecyclePhase.INTEGRATION_TEST)
+public class Load extends AbstractGoal {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Load.class);
+
+    private static final String REPORT_FILE_NAME = "fuse-load-report.txt";
+    private static final Long HIGHEST_LATENCY = TimeUnit.MINUTES.toMicros(10);
+    private static final Integer SIGNIFICANT_DIGITS = 3;
+    private static final Integer HTTP_TIMEOUT = 30000;
+    private static final Double MICROS_PER_MILLI = 1000.0;
+
+    @Parameter
+    private List<Endpoint> endpoints;
+
+    @Parameter(defaultValue = "10")
+    private Integer loadConcurrency;
+
+    @Parameter
+    private Integer loadRate;
+
+    @Parameter(defaultValue = "5000")
+    private Long loadWarmup;
+
+    @Parameter(defaultValue = "30000")
+    private Long loadDuration;
+
+    @Parameter
+    private Double loadMaxP99;
+
+    @Parameter
+    private Double loadMaxErrorRate;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        LOG.info("Load jboss-fuse endpoints");
+        if (endpoints == null || endpoints.isEmpty()) {
+            LOG.info("No endpoints");
+            return;
+        }
+        ExceptionManager.throwMojoExecutionException(loadConcurrency == null || loadConcurrency <= 0, String.format("Invalid loadConcurrency %s", loadConcurrency));
+        ExceptionManager.throwMojoExecutionException(loadRate != null && loadRate <= 0, String.format("Invalid loadRate %s", loadRate));
+
+        StringBuilder report = new StringBuilder(String.format("%-60s %10s %8s %10s %10s %10s %10s %10s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        List<String> failures = new ArrayList<>();
+        TARGET_DIRECTORY.mkdirs();
+        for (int i = 0; i < endpoints.size(); i++) {
+            Endpoint endpoint = endpoints.get(i);
+            ExceptionManager.throwMojoExecutionExceptionIfNull(endpoint.getUrl(), "Null url");
+            LOG.info("Warm up {} for {} ms", endpoint.getUrl(), loadWarmup);
+            run(endpoint, loadWarmup);
+            LOG.info("Load {} for {} ms", endpoint.getUrl(), loadDuration);
+            Result result = run(endpoint, loadDuration);
+            Histogram histogram = result.histogram;
+            double throughput = 1000.0 * histogram.getTotalCount() / result.elapsed;
+            double errorRate = histogram.getTotalCount() == 0 ? 0 : 100.0 * result.errors / histogram.getTotalCount();
+            double p99 = histogram.getValueAtPercentile(99) / MICROS_PER_MILLI;
+            report.append(String.format("%-60s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                    endpoint.getUrl(), histogram.getTotalCount(), result.errors, throughput,
+                    histogram.getValueAtPercentile(50) / MICROS_PER_MILLI, p99,
+                    histogram.getValueAtPercentile(99.9) / MICROS_PER_MILLI, histogram.getMaxValue() / MICROS_PER_MILLI));
+            writeDistribution(histogram, new File(TARGET_DIRECTORY, String.format("fuse-load-%d.hgrm", i)));
+            if (loadMaxP99 != null && p99 > loadMaxP99) {
+                failures.add(String.format("%s p99 %.2f ms > %.2f ms", endpoint.getUrl(), p99, loadMaxP99));
+            }
+            if (loadMaxErrorRate != null && errorRate > loadMaxErrorRate) {
+                failures.add(String.format("%s errors %.2f%% > %.2f%%", endpoint.getUrl(), errorRate, loadMaxErrorRate));
+            }
+        }
+        LOG.info("\n{}", report);
+        try {
+            FileUtils.write(new File(TARGET_DIRECTORY, REPORT_FILE_NAME), report.toString(), "UTF-8");
+        } catch (IOException ex) {
+            throw new MojoExecutionException(ex.getMessage(), ex);
+        }
+        if (!failures.isEmpty()) {
+            throw new MojoFailureException(String.format("Load thresholds exceeded: %s", String.join(", ", failures)));
+        }
+    }
+
+    private Result run(Endpoint endpoint, Long duration) throws MojoExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(loadConcurrency);
+        long startTime = System.nanoTime();
+        long endTime = startTime + TimeUnit.MILLISECONDS.toNanos(duration);
+        // With a target rate every worker sends one request per interval and latency is measured from the
+        // intended send time, so a slow response does not hide the requests it delays
+        Long interval = loadRate != null ? TimeUnit.SECONDS.toNanos(loadConcurrency) / loadRate : null;
+        List<Future<Result>> workers = new ArrayList<>();
+        for (int i = 0; i < loadConcurrency; i++) {
+            long offset = interval != null ? i * interval / loadConcurrency : 0;
+            workers.add(executor.submit(() -> work(endpoint, startTime + offset, endTime, interval)));
+        }
+        Result result = new Result();
+        try {
+            for (Future<Result> worker : workers) {
+                Result workerResult = worker.get();
+                result.histogram.add(workerResult.histogram);
+                result.errors += workerResult.errors;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException(ex.getMessage(), ex);
+        } catch (ExecutionException ex) {
+            throw new MojoExecutionException(ex.getCause().getMessage(), ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        result.elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        return result;
+    }
+
+    private static Result work(Endpoint endpoint, long startTime, long endTime, Long interval) throws InterruptedException {
+        Result result = new Result();
+        long intendedTime = startTime;
+        while (intendedTime < endTime) {
+            long now = System.nanoTime();
+            if (interval != null && intendedTime > now) {
+                TimeUnit.NANOSECONDS.sleep(intendedTime - now);
+            }
+            long sendTime = interval != null ? intendedTime : System.nanoTime();
+            if (!send(endpoint)) {
+                result.errors++;
+            }
+            long responseTime = System.nanoTime();
+            result.histogram.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(responseTime - sendTime), HIGHEST_LATENCY));
+            intendedTime = interval != null ? intendedTime + interval : responseTime;
+        }
+        return result;
+    }
+
+    private static Boolean send(Endpoint endpoint) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(endpoint.getUrl()).openConnection();
+            connection.setConnectTimeout(HTTP_TIMEOUT);
+            connection.setReadTimeout(HTTP_TIMEOUT);
+            connection.setRequestMethod(endpoint.getMethod());
+            if (endpoint.getContentType() != null) {
+                connection.setRequestProperty("Content-Type", endpoint.getContentType());
+            }
+            if (endpoint.getBody() != null) {
+                connection.setDoOutput(true);
+                try (OutputStream outputStream = connection.getOutputStream()) {
+                    outputStream.write(endpoint.getBody().getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            int status = connection.getResponseCode();
+            try (InputStream inputStream = status < HttpURLConnection.HTTP_BAD_REQUEST ? connection.getInputStream() : connection.getErrorStream()) {
+                if (inputStream != null) {
+                    IOUtils.skip(inputStream, Long.MAX_VALUE);
+                }
+            }
+            return status == endpoint.getExpectedStatus();
+        } catch (IOException ex) {
+            LOG.debug(ex.getMessage(), ex);
+            return Boolean.FALSE;
+        }
+    }
+
+    private static void writeDistribution(Histogram histogram, File file) throws MojoExecutionException {
+        try (PrintStream printStream = new PrintStream(file, "UTF-8")) {
+            histogram.outputPercentileDistribution(printStream, MICROS_PER_MILLI);
+        } catch (FileNotFoundException | UnsupportedEncodingException ex) {
+            throw new MojoExecutionException(ex.getMessage(), ex);
+        }
+    }
+
+    static class Result {
+
+        private final Histogram histogram = new Histogram(HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+        private Long errors = 0L;
+        private Long elapsed = 0L;
+    }
+
+}
@@ -17,7 +17,15 @@ package it.imolinfo.maven.plugins.jboss.fuse;
 
 
 
+import it.imolinfo.maven.plugins.jboss.fuse.utils.EmbeddedKaraf;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.EventJournal;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.FlightRecorder;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.JvmMetricsSampler;
 import it.imolinfo.maven.plugins.jboss.fuse.utils.KarafJMXConnector;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.KarafProcess;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.ReactorContainer;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.RouteStatistics;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.StackSampler;
 import java.io.IOException;
 import javax.management.InstanceNotFoundException;
 import javax.management.MBeanException;
@@ -27,6 +35,8 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.awaitility.core.ConditionTimeoutException;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,12 +48,49 @@ public class Shutdown extends AbstractGoal  {
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
         LOG.info("Shutdown jboss-fuse");
+        initLayout();
+        if (Boolean.TRUE.equals(reactorMode)) {
+            ReactorContainer.finish(repositorySession, project);
+            if (!ReactorContainer.isLastParticipant(repositorySession, session.getProjects(), project, plugin.getPluginLookupKey(), session.getUserProperties())) {
+                LOG.info("Keep jboss-fuse running for the next modules");
+                return;
+            }
+        }
+
+        JvmMetricsSampler.stop(TARGET_DIRECTORY);
+        StackSampler.stop(TARGET_DIRECTORY);
+        EventJournal.mark("shutdown");
+        MojoExecutionException failure = null;
         try {
             KarafJMXConnector jMXConnector = KarafJMXConnector.getInstance(DEFAULT_STOP_TIMEOUT);
+            RouteStatistics.stop(jMXConnector.getConnection(), TARGET_DIRECTORY);
+            FlightRecorder.stop(jMXConnector.getConnection(), TARGET_DIRECTORY);
             jMXConnector.shutdown();
-        } catch (IOException | ReflectionException | MBeanException | InstanceNotFoundException | MalformedObjectNameException ex) {
+        } catch (IOException | ReflectionException | MBeanException | InstanceNotFoundException | MalformedObjectNameException | ConditionTimeoutException ex) {
             LOG.error(ex.getMessage(), ex);
-            throw new MojoExecutionException(ex.getMessage(), ex);
+            // A JVM started by the plugin is still stopped below
+            if (!KarafProcess.isStarted() && !EmbeddedKaraf.isStarted()) {
+                failure = new MojoExecutionException(ex.getMessage(), ex);
+            }
+        }
+        if (KarafProcess.isStarted()) {
+            try {
+                KarafProcess.stop(DEFAULT_STOP_TIMEOUT);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException(ex.getMessage(), ex);
+            }
+        }
+        if (EmbeddedKaraf.isStarted()) {
+            EmbeddedKaraf.stop();
+        }
+        KarafJMXConnector.close();
+        EventJournal.stop();
+        if (repositorySession != null) {
+            ReactorContainer.remove(repositorySession);
+        }
+        if (failure != null) {
+            throw failure;
         }
     }
 }
@@ -16,17 +16,51 @@
 package it.imolinfo.maven.plugins.jboss.fuse;
 
 import it.imolinfo.maven.plugins.jboss.fuse.model.Bundle;
+import it.imolinfo.maven.plugins.jboss.fuse.model.BundleFile;
+import it.imolinfo.maven.plugins.jboss.fuse.options.BootProfile;
 import it.imolinfo.maven.plugins.jboss.fuse.options.Cfg;
+import it.imolinfo.maven.plugins.jboss.fuse.options.ConnectorType;
+import it.imolinfo.maven.plugins.jboss.fuse.options.Deployment;
+import it.imolinfo.maven.plugins.jboss.fuse.options.LaunchMode;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.ActivationScheduler;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.AttachConnectionFactory;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.BootProfiles;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.ConnectionLatency;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.DeploymentPlan;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.DeploymentWatcher;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.EmbeddedKaraf;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.EventJournal;
 import it.imolinfo.maven.plugins.jboss.fuse.utils.ExceptionManager;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.FeaturesGenerator;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.FlightRecorder;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.JvmMetricsSampler;
 import it.imolinfo.maven.plugins.jboss.fuse.utils.KarafJMXConnector;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.KarafProcess;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.PlatformConnectionFactory;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.ProcessMemory;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.ReactorContainer;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.RmiConnectionFactory;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.RouteStatistics;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.StackSampler;
+import it.imolinfo.maven.plugins.jboss.fuse.utils.StartupHistory;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
 import javax.management.MBeanException;
 import javax.management.MalformedObjectNameException;
 import javax.management.ReflectionException;
@@ -61,6 +95,14 @@ public class Start extends AbstractGoal {
     private static final String USER_PROPERTIES_FILE_NAME = "users.properties";
     private static final String DEFAULT_ADMIN_CONFIG = "#admin=admin,admin,manager,viewer,Monitor, Operator, Maintainer, Deployer, Auditor, Administrator, SuperUser";
     private static final String ADMIN_CONFIG = "admin=admin,admin,manager,viewer,Monitor, Operator, Maintainer, Deployer, Auditor, Administrator, SuperUser";
+    private static final String FEATURES_FILE_NAME = "fuse-deployment-features.xml";
+    private static final String DEPLOYMENT_PLAN_FILE_NAME = "fuse-deployment-plan.lock";
+    private static final String BUNDLES = "bundles";
+    private static final String BUNDLES_POST_DEPLOY = "bundlesPostDeploy";
+    private static final String SNAPSHOT = "SNAPSHOT";
+    private static final Integer CONNECTOR_COMPARISON_INVOCATIONS = 100;
+    private static final String BOOT_PROFILES_FILE_NAME = "boot-profiles.properties";
+    private static final Pattern START_LEVEL_PATTERN = Pattern.compile("\\[([0-9]+)\\]$");
 
     @Parameter
     private Long timeout;
@@ -83,38 +125,394 @@ public class Start extends AbstractGoal {
     @Parameter(required = false)
     private Integer bundleStartLevel;
 
+    @Parameter(defaultValue = "false")
+    private Boolean deployAsFeature;
+
+    @Parameter(defaultValue = "true")
+    private Boolean deploymentPlanLock;
+
+    @Parameter
+    private File deploymentPlanLockFile;
+
+    @Parameter(defaultValue = "false")
+    private Boolean parallelActivation;
+
+    @Parameter
+    private List<Deployment> deployments;
+
+    @Parameter(defaultValue = "false")
+    private Boolean jvmMetrics;
+
+    @Parameter(defaultValue = "1000")
+    private Long jvmMetricsInterval;
+
+    @Parameter(defaultValue = "false")
+    private Boolean reactorUninstallPrevious;
+
+    @Parameter(defaultValue = "SCRIPT")
+    protected LaunchMode launchMode;
+
+    @Parameter(defaultValue = "-Xms512M,-Xmx1024M")
+    private String jvmArgs;
+
+    @Parameter(defaultValue = "RMI")
+    private ConnectorType connector;
+
+    @Parameter(defaultValue = "STOCK")
+    private BootProfile bootProfile;
+
+    @Parameter(defaultValue = "false")
+    private Boolean connectorComparison;
+
+    @Parameter(defaultValue = "false")
+    private Boolean eventJournal;
+
+    @Parameter(defaultValue = "true")
+    private Boolean camelRouteReport;
+
+    @Parameter(defaultValue = "false")
+    private Boolean stackSampler;
+
+    @Parameter(defaultValue = "100")
+    private Long stackSamplerInterval;
+
+    @Parameter(defaultValue = "64")
+    private Integer stackSamplerMaxDepth;
+
+    @Parameter(defaultValue = "1000")
+    private Long stackSamplerStallThreshold;
+
+    @Parameter(defaultValue = "false")
+    private Boolean jfr;
+
+    @Parameter(defaultValue = "profile")
+    private String jfrSettings;
+
+    @Parameter(defaultValue = "false")
+    private Boolean jfrStartAfterDeploy;
+
+    @Parameter(defaultValue = "false")
+    protected Boolean startupHistory;
+
+
+    @Parameter
+    private File startupHistoryFile;
+
+    @Parameter(defaultValue = "10")
+    private Integer startupBaselineRuns;
+
+    @Parameter(defaultValue = "25")
+    private Double startupRegressionThreshold;
+
+    @Parameter(defaultValue = "500")
+    private Long startupRegressionMinDelta;
+
+    @Parameter(defaultValue = "false")
+    private Boolean failOnStartupRegression;
+
+    protected final Map<String, Long> timings = new LinkedHashMap<>();
+    private Map<String, List<BundleFile>> deploymentPlan;
+
     @Component
     private RepositorySystem repository;
 
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
         LOG.info("Start jboss-fuse");
+        Long startTime = System.currentTimeMillis();
+        initLayout();
         timeout = timeout == null ? TIMEOUT : timeout;
-        download();
-        initBinDirectory();
-        disableAdminPassword();
-        configure();
-        etc();
-        startJbosFuse();
-        features();
-        deployBundles(bundles, timeout);
-        if (project.getArtifact().getFile() != null) {
-            deploy(project.getArtifact().getFile(), timeout, bundleStartLevel);
+        Long phaseStartTime = System.currentTimeMillis();
+        plan();
+        timings.put("plan", System.currentTimeMillis() - phaseStartTime);
+        Boolean sharedContainer = reactorMode && reactorContainer();
+        stackSampler();
+        if (sharedContainer) {
+            LOG.info("Deploy in the jboss-fuse started by a previous module");
+            if (reactorUninstallPrevious) {
+                uninstall(ReactorContainer.getBundles(repositorySession));
+            }
+        } else {
+            download();
+            initBinDirectory();
+            disableAdminPassword();
+            bootProfile();
+            configure();
+            etc();
+            eventJournal();
+            EventJournal.mark("boot");
+            phaseStartTime = System.currentTimeMillis();
+            startJbosFuse();
+            timings.put("boot", System.currentTimeMillis() - phaseStartTime);
+            if (reactorMode) {
+                ReactorContainer.stopOnSessionEnd(session.getRequest(), repositorySession, this::stopOnSessionEnd);
+            }
+            bootProfileReport();
+            connectorComparison();
+            jvmMetrics();
+            if (!jfrStartAfterDeploy) {
+                flightRecorder();
+            }
         }
-        deployBundles(bundlesPostDeploy, timeout);
+        Set<Long> previousBundles = reactorMode ? bundleIds() : Collections.<Long>emptySet();
+        StackSampler.context("deploy");
+        EventJournal.mark("deploy");
+        phaseStartTime = System.currentTimeMillis();
+        if (deployAsFeature) {
+            deployFeature();
+            timings.put("feature", System.currentTimeMillis() - phaseStartTime);
+        } else {
+            features();
+            timings.put("features", System.currentTimeMillis() - phaseStartTime);
+            deployBundles(deploymentPlan.get(BUNDLES), timeout);
+            if (project.getArtifact().getFile() != null) {
+                deploy(project.getArtifact().getFile(), timeout, bundleStartLevel);
+            }
+            deployBundles(deploymentPlan.get(BUNDLES_POST_DEPLOY), timeout);
+        }
+        EventJournal.mark("deployments");
+        StackSampler.context("deployments");
+        deployments();
+        EventJournal.mark("ready");
+        StackSampler.stop(TARGET_DIRECTORY);
         list(timeout);
+        routeStatistics();
+        if (reactorMode) {
+            Set<Long> moduleBundles = bundleIds();
+            moduleBundles.removeAll(previousBundles);
+            ReactorContainer.register(repositorySession, launchMode.name(), moduleBundles);
+        }
+        if (jfrStartAfterDeploy) {
+            flightRecorder();
+        }
+        timings.put("total", System.currentTimeMillis() - startTime);
+        startupHistory();
+    }
+
+    /**
+     * Finds the container started by a previous module. A module loading the
+     * plugin in another realm does not see that connection and connects again
+     * through the JMX port, which an embedded container does not have.
+     *
+     * @return true if a previous module started the container
+     */
+    private Boolean reactorContainer() throws MojoExecutionException {
+        if (!ReactorContainer.isRegistered(repositorySession)) {
+            return Boolean.FALSE;
+        }
+        if (!KarafJMXConnector.isConnected()) {
+            if (LaunchMode.EMBEDDED.name().equals(ReactorContainer.getLaunchMode(repositorySession))) {
+                throw new MojoExecutionException("The embedded jboss-fuse started by a previous module belongs to another plugin realm; "
+                        + "give the modules the same plugin dependencies or use the SCRIPT or DIRECT launch mode");
+            }
+            LOG.info("Connect to the jboss-fuse started by a previous module in another plugin realm");
+            try {
+                KarafJMXConnector.getInstance(timeout);
+            } catch (IOException | MalformedObjectNameException | ConditionTimeoutException ex) {
+                throw new MojoExecutionException(String.format("Cannot connect to the jboss-fuse started by a previous module: %s", ex.getMessage()), ex);
+            }
+        }
+        return Boolean.TRUE;
+    }
+
+    /**
+     * Last resort stop of a shared container left running by the reactor
+     */
+    private void stopOnSessionEnd() {
+        LOG.warn("Stop the jboss-fuse left running by the reactor modules");
+        try {
+            new Shutdown().execute();
+        } catch (MojoExecutionException | MojoFailureException ex) {
+            LOG.error(ex.getMessage(), ex);
+        }
+    }
+
+    private Set<Long> bundleIds() throws MojoExecutionException, MojoFailureException {
+
+        Set<Long> bundleIds = new HashSet<>();
+        try {
+            for (Bundle bundle : KarafJMXConnector.getInstance(timeout).list()) {
+                bundleIds.add(bundle.getId());
+            }
+        } catch (IOException | MalformedObjectNameException | InstanceNotFoundException | MBeanException | ReflectionException ex) {
+            new Shutdown().execute();
+            throw new MojoExecutionException(ex.getMessage(), ex);
+        }
+        return bundleIds;
+    }
+
+    /**
+     * Uninstalls the bundles deployed by the previous module
+     */
+    private void uninstall(Set<Long> bundleIds) throws MojoExecutionException, MojoFailureException {
+        try {
+            KarafJMXConnector jMXConnector = KarafJMXConnector.getInstance(timeout);
+            for (Long bundleId : bundleIds) {
+                jMXConnector.uninstall(bundleId);
+            }
+        } catch (IOException | MalformedObjectNameException | InstanceNotFoundException | MBeanException | ReflectionException ex) {
+            new Shutdown().execute();
+            throw new MojoExecutionException(ex.getMessage(), ex);
+        }
     }
 
     private void startJbosFuse() throws MojoExecutionException, MojoFailureException {
         Runtime runtime = Runtime.getRuntime();
         try {
-            runtime.exec(START_CMD).waitFor();
-        } catch (IOException | InterruptedException ex) {
+            if (launchMode == LaunchMode.DIRECT) {
+                KarafProcess.start(JBOSS_FUSE_DIRECTORY, split(jvmArgs));
+            } else if (launchMode == LaunchMode.EMBEDDED) {
+                EmbeddedKaraf.start(JBOSS_FUSE_DIRECTORY);
+                KarafJMXConnector.setConnectionFactory(new PlatformConnectionFactory());
+            } else {
+                runtime.exec(START_CMD).waitFor();
+            }
+            if (connector == ConnectorType.ATTACH && launchMode != LaunchMode.EMBEDDED) {
+                KarafJMXConnector.setConnectionFactory(new AttachConnectionFactory(JBOSS_FUSE_DIRECTORY, KarafProcess.getPid()));
+            }
+            KarafJMXConnector.getInstance(timeout);
+        } catch (IOException | InterruptedException | MalformedObjectNameException | ConditionTimeoutException ex) {
+            new Shutdown().execute();
+            throw new MojoExecutionException(ex.getMessage(), ex);
+        }
+
+    }
+
+    private void startupHistory() throws MojoExecutionException, MojoFailureException {
+        if (!startupHistory) {
+            return;
+        }
+        File historyFile = startupHistoryFile != null ? startupHistoryFile
+                : new File(String.format("%s/%s/history/%s.%s.history", settings.getLocalRepository(), JBOSS_FUSE_DOWNLOAD_DIRECTORY, project.getGroupId(), project.getArtifactId()));
+        List<String> regressions;
+        try {
+            regressions = StartupHistory.regressions(StartupHistory.load(historyFile), timings,
+                    startupBaselineRuns, startupRegressionThreshold, startupRegressionMinDelta);
+            StartupHistory.append(historyFile, timings);
+        } catch (IOException ex) {
+            throw new MojoExecutionException(ex.getMessage(), ex);
+        }
+        timings.forEach((phase, time) -> LOG.info("{}: {} ms", phase, time));
+        for (String regression : regressions) {
+            LOG.warn("Startup regression {}", regression);
+        }
+        if (failOnStartupRegression && !regressions.isEmpty()) {
             new Shutdown().execute();
+            throw new MojoFailureException(String.format("Startup regression: %s", String.join(", ", regressions)));
+        }
+    }
+
+    private void bootProfile() throws MojoExecutionException {
+        try {
+            BootProfiles.apply(JBOSS_FUSE_ETC_DIRECTORY, bootProfile, split(features));
+        } catch (IOException ex) {
             throw new MojoExecutionException(ex.getMessage(), ex);
         }
     }
 
+    private void bootProfileReport() throws MojoExecutionException, MojoFailureException {
+        File measuresFile = new File(String.format("%s/%s/history/%s", settings.getLocalRepository(), JBOSS_FUSE_DOWNLOAD_DIRECTORY, BOOT_PROFILES_FILE_NAME));
+        try {
+            // The resident memory of the build JVM says nothing about an embedded container
+            Long rss = null;
+            if (launchMode != LaunchMode.EMBEDDED) {
+                Long pid = KarafProcess.getPid() != null ? KarafProcess.getPid() : ProcessMemory.pid(KarafJMXConnector.getInstance(timeout).getConnection());
+                rss = ProcessMemory.rss(pid);
+            }
+            BootProfiles.report(measuresFile, bootProfile, timings.get("boot"), rss);
+        } catch (IOException | MalformedObjectNameException ex) {
+            LOG.warn("Boot profile report failed: {}", ex.getMessage());
+            LOG.debug(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Compares connection setup time and invocation latency of the RMI and
+     * attach connectors
+     */
+    private void connectorComparison() {
+        if (!connectorComparison || launchMode == LaunchMode.EMBEDDED) {
+            return;
+        }
+        try {
+            ConnectionLatency rmi = ConnectionLatency.measure(new RmiConnectionFactory(), CONNECTOR_COMPARISON_INVOCATIONS);
+            AttachConnectionFactory attachConnectionFactory = new AttachConnectionFactory(JBOSS_FUSE_DIRECTORY, KarafProcess.getPid());
+            ConnectionLatency attach = ConnectionLatency.measure(attachConnectionFactory, CONNECTOR_COMPARISON_INVOCATIONS);
+            LOG.info("RMI connector: setup {} ms, invocation {} us", rmi.getSetupTime(), rmi.getInvocationLatency());
+            if (attachConnectionFactory.isAttached()) {
+                LOG.info("Attach connector: setup {} ms, invocation {} us", attach.getSetupTime(), attach.getInvocationLatency());
+            } else {
+                LOG.info("Attach connector: attach not available, no comparison");
+            }
+        } catch (IOException | JMException ex) {
+            LOG.warn("Connector comparison failed: {}", ex.getMessage());
+            LOG.debug(ex.getMessage(), ex);
+        }
+    }
+
+    private void routeStatistics() {
+        if (camelRouteReport) {
+            try {
+                RouteStatistics.start(KarafJMXConnector.getInstance(timeout).getConnection());
+            } catch (IOException | JMException ex) {
+                LOG.warn("Camel route statistics not available: {}", ex.getMessage());
+                LOG.debug(ex.getMessage(), ex);
+            }
+        }
+    }
+
+    /**
+     * Arms the stack sampler, which starts as soon as the container accepts
+     * the JMX connection, so that the boot is sampled too
+     */
+    private void stackSampler() throws MojoExecutionException, MojoFailureException {
+        if (stackSampler) {
+            StackSampler.start(stackSamplerInterval, stackSamplerMaxDepth, stackSamplerStallThreshold);
+            if (KarafJMXConnector.isConnected()) {
+                try {
+                    StackSampler.attach(KarafJMXConnector.getInstance(timeout).getConnection());
+                } catch (IOException | MalformedObjectNameException ex) {
+                    new Shutdown().execute();
+                    throw new MojoExecutionException(ex.getMessage(), ex);
+                }
+            }
+        }
+    }
+
+    private void eventJournal() throws MojoExecutionException {
+        if (eventJournal) {
+            try {
+                EventJournal.start(TARGET_DIRECTORY);
+            } catch (IOException ex) {
+                throw new MojoExecutionException(ex.getMessage(), ex);
+            }
+        }
+    }
+
+    private void flightRecorder() throws MojoExecutionException, MojoFailureException {
+        if (jfr) {
+            try {
+                FlightRecorder.start(KarafJMXConnector.getInstance(timeout).getConnection(), jfrSettings);
+            } catch (IOException | JMException ex) {
+                LOG.error(ex.getMessage(), ex);
+                new Shutdown().execute();
+                throw new MojoExecutionException(ex.getMessage(), ex);
+            }
+        }
+    }
+
+    private void jvmMetrics() throws MojoExecutionException, MojoFailureException {
+        if (jvmMetrics) {
+            try {
+                JvmMetricsSampler.start(KarafJMXConnector.getInstance(timeout).getConnection(), jvmMetricsInterval);
+            } catch (IOException | JMException ex) {
+                LOG.error(ex.getMessage(), ex);
+                new Shutdown().execute();
+                throw new MojoExecutionException(ex.getMessage(), ex);
+            }
+        }
+    }
+
     private void configure() throws MojoExecutionException, MojoFailureException {
         if (cfg != null) {
             for (Cfg configuration : cfg) {
@@ -148,6 +546,7 @@ public class Start extends AbstractGoal {
             for (String feature : features.split(",")) {
                 feature = feature.trim();
                 LOG.info("Deploy feature {}", feature);
+                StackSampler.context(String.format("feature:%s", feature));
                 try {
                     KarafJMXConnector jMXConnector = KarafJMXConnector.getInstance(timeout);
                     jMXConnector.featureInstall(feature);
@@ -161,31 +560,180 @@ public class Start extends AbstractGoal {
 
     }
 
-    private void deployBundles(String bundles, Long timeout) throws MojoExecutionException, MojoFailureException {
+    private void deployFeature() throws MojoExecutionException, MojoFailureException {
+        List<String> featureList = new ArrayList<>();
+        if (features != null) {
+            for (String feature : features.split(",")) {
+                featureList.add(feature.trim());
+            }
+        }
+        List<BundleFile> bundleFiles = new ArrayList<>(deploymentPlan.get(BUNDLES));
+        if (project.getArtifact().getFile() != null) {
+            bundleFiles.add(new BundleFile(project.getArtifact().getFile(), bundleStartLevel));
+        }
+        bundleFiles.addAll(deploymentPlan.get(BUNDLES_POST_DEPLOY));
+        String featureName = String.format("%s-deployment", project.getArtifactId());
+        File featuresFile = new File(TARGET_DIRECTORY, FEATURES_FILE_NAME);
+        try {
+            FeaturesGenerator.generate(featuresFile, featureName, featureList, bundleFiles);
+            KarafJMXConnector jMXConnector = KarafJMXConnector.getInstance(timeout);
+            jMXConnector.addRepository(String.format("%s%s", FILE_PREFIX, featuresFile.getAbsolutePath()));
+            LOG.info("Deploy feature {}", featureName);
+            StackSampler.context(String.format("feature:%s", featureName));
+            jMXConnector.featureInstall(featureName);
+        } catch (ReflectionException | MBeanException | InstanceNotFoundException | IOException | MalformedObjectNameException ex) {
+            LOG.error(ex.getMessage(), ex);
+            new Shutdown().execute();
+            throw new MojoExecutionException(ex.getMessage(), ex);
+        }
+    }
+
+    private void deployments() throws MojoExecutionException, MojoFailureException {
+        if (deployments == null || deployments.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(deployments.size());
+        DeploymentWatcher watcher = null;
+        try {
+            KarafJMXConnector jMXConnector = KarafJMXConnector.getInstance(timeout);
+            watcher = new DeploymentWatcher(jMXConnector);
+            watcher.register();
+            Map<Deployment, Future<Long>> readiness = new LinkedHashMap<>();
+            for (Deployment deployment : deployments) {
+                ExceptionManager.throwMojoExecutionExceptionIfNull(deployment.getSource(), "Null source File");
+                ExceptionManager.throwMojoExecutionException(!deployment.getSource().exists(), String.format("%s not exists", deployment.getSource().getAbsolutePath()));
+                LOG.info("Deploy {}", DeploymentWatcher.name(deployment));
+                Long startTime = System.currentTimeMillis();
+                Long bundleId = jMXConnector.install(deployment.getSource());
+                jMXConnector.start(bundleId);
+                Long deploymentTimeout = deployment.getTimeout() != null ? deployment.getTimeout() : timeout;
+                final DeploymentWatcher deploymentWatcher = watcher;
+                readiness.put(deployment, executor.submit(() -> deploymentWatcher.await(bundleId, deployment, startTime, deploymentTimeout)));
+            }
+            for (Map.Entry<Deployment, Future<Long>> entry : readiness.entrySet()) {
+                Long readyTime = entry.getValue().get();
+                LOG.info("Deployment {} ready in {} ms", DeploymentWatcher.name(entry.getKey()), readyTime);
+                timings.put(String.format("deployment:%s", DeploymentWatcher.name(entry.getKey())), readyTime);
+            }
+        } catch (ExecutionException ex) {
+            new Shutdown().execute();
+            throw new MojoExecutionException(ex.getCause().getMessage(), ex.getCause());
+        } catch (MojoExecutionException ex) {
+            new Shutdown().execute();
+            throw ex;
+        } catch (IOException | MalformedObjectNameException | InstanceNotFoundException | MBeanException | ReflectionException | InterruptedException ex) {
+            new Shutdown().execute();
+            throw new MojoExecutionException(ex.getMessage(), ex);
+        } finally {
+            if (watcher != null) {
+                watcher.unregister();
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    private void deployBundles(List<BundleFile> bundleFiles, Long timeout) throws MojoExecutionException, MojoFailureException {
+        if (parallelActivation) {
+            StackSampler.context("activation");
+            activate(bundleFiles, timeout);
+        } else {
+            for (BundleFile bundleFile : bundleFiles) {
+                deploy(bundleFile.getFile(), timeout, bundleFile.getStartLevel());
+            }
+        }
+    }
+
+    private void activate(List<BundleFile> bundleFiles, Long timeout) throws MojoExecutionException, MojoFailureException {
+        Long startTime = System.currentTimeMillis();
+        try {
+            final KarafJMXConnector fuseJMXConnector = KarafJMXConnector.getInstance(timeout);
+            Map<Long, Integer> bundleLevels = new LinkedHashMap<>();
+            for (BundleFile bundleFile : bundleFiles) {
+                Long bundleId = fuseJMXConnector.install(bundleFile.getFile());
+                if (bundleFile.getStartLevel() != null) {
+                    fuseJMXConnector.setStartLevel(bundleId, bundleFile.getStartLevel());
+                }
+                bundleLevels.put(bundleId, bundleFile.getStartLevel());
+            }
+            new ActivationScheduler(fuseJMXConnector).activate(bundleLevels);
+            timings.merge("activation", System.currentTimeMillis() - startTime, Long::sum);
+            for (Long bundleId : bundleLevels.keySet()) {
+                log(fuseJMXConnector.getBundle(bundleId));
+            }
+        } catch (MojoExecutionException ex) {
+            new Shutdown().execute();
+            throw ex;
+        } catch (IOException | MalformedObjectNameException | InstanceNotFoundException | MBeanException | ReflectionException ex) {
+            new Shutdown().execute();
+            throw new MojoExecutionException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Resolves the bundle lists, or reads them from the deployment plan
+     * lockfile when the lists are unchanged and the resolved files are still
+     * the same
+     */
+    private void plan() throws MojoExecutionException {
+        File lockFile = deploymentPlanLockFile();
+        String inputsHash = DeploymentPlan.inputsHash(String.valueOf(bundles), String.valueOf(bundlesPostDeploy));
+        // SNAPSHOT coordinates are always resolved, the repository may have a newer one
+        Boolean reusable = deploymentPlanLock && !String.valueOf(bundles).contains(SNAPSHOT) && !String.valueOf(bundlesPostDeploy).contains(SNAPSHOT);
+        try {
+            if (reusable) {
+                deploymentPlan = DeploymentPlan.load(lockFile, inputsHash);
+                if (deploymentPlan != null) {
+                    LOG.info("Deployment plan read from {}", lockFile.getAbsolutePath());
+                    return;
+                }
+            }
+            deploymentPlan = new LinkedHashMap<>();
+            deploymentPlan.put(BUNDLES, parseBundles(bundles));
+            deploymentPlan.put(BUNDLES_POST_DEPLOY, parseBundles(bundlesPostDeploy));
+            if (deploymentPlanLock) {
+                DeploymentPlan.write(lockFile, inputsHash, deploymentPlan);
+            }
+        } catch (IOException ex) {
+            throw new MojoExecutionException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * The default lockfile is kept in the local repository, next to the
+     * startup history, so that it survives mvn clean
+     */
+    protected File deploymentPlanLockFile() {
+        return deploymentPlanLockFile != null ? deploymentPlanLockFile
+                : new File(String.format("%s/%s/history/%s.%s.%s", settings.getLocalRepository(), JBOSS_FUSE_DOWNLOAD_DIRECTORY, project.getGroupId(), project.getArtifactId(), DEPLOYMENT_PLAN_FILE_NAME));
+    }
+
+
+    private List<BundleFile> parseBundles(String bundles) throws MojoExecutionException {
+        List<BundleFile> bundleFiles = new ArrayList<>();
         if (bundles != null) {
             for (String bundle : bundles.split(",")) {
                 bundle = bundle.trim();
                 Integer bundleLevel = null;
                 LOG.info("Deploy bundle {}", bundle);
-                Pattern pattern = Pattern.compile("\\[([0-9]+)\\]$");
-                Matcher matcher = pattern.matcher(bundle);
+                Matcher matcher = START_LEVEL_PATTERN.matcher(bundle);
                 if (matcher.find()) {
                     bundleLevel = Integer.parseInt(matcher.group(1));
                     bundle = matcher.replaceAll("");
                     LOG.info("Set bundleLevel {} for {}", bundleLevel, bundle);
                 }
                 if (bundle.startsWith("mvn:")) {
-                    installArtifact(bundle.replace("mvn:", ""), bundleLevel);
+                    bundleFiles.add(new BundleFile(resolveArtifact(bundle.replace("mvn:", "")), bundleLevel));
                 } else if (bundle.startsWith(UNIX_FILE_PREFIX) || bundle.startsWith(WINDOWS_FILE_PREFIX)) {
-                    deploy(new File(bundle.replace(UNIX_FILE_PREFIX, "").replace(WINDOWS_FILE_PREFIX, "")), timeout, bundleLevel);
+                    bundleFiles.add(new BundleFile(new File(bundle.replace(UNIX_FILE_PREFIX, "").replace(WINDOWS_FILE_PREFIX, "")), bundleLevel));
                 } else {
                     throw new MojoExecutionException(String.format("Budnle syntax error: %s", bundle));
                 }
             }
         }
+        return bundleFiles;
     }
 
-    private Long installArtifact(String bundle, Integer bundleLevel) throws MojoExecutionException, MojoFailureException {
+    private File resolveArtifact(String bundle) {
         String[] bundleInfo = bundle.trim().split("/");
         ArtifactResolutionRequest request = new ArtifactResolutionRequest();
         DefaultArtifactHandler artifactHandler = new DefaultArtifactHandler("jar");
@@ -201,8 +749,7 @@ public class Start extends AbstractGoal {
         resolutionListeners.add(resolutionListener);
         request.setListeners(resolutionListeners);
         ArtifactResolutionResult result = repository.resolve(request);
-        File bundleFile = result.getArtifacts().iterator().next().getFile();
-        return deploy(bundleFile, timeout, bundleLevel);
+        return result.getArtifacts().iterator().next().getFile();
     }
 
     private static void configure(Cfg configuration) throws IOException, MojoExecutionException {
@@ -280,7 +827,9 @@ public class Start extends AbstractGoal {
         }
     }
 
-    private static Long deploy(File deployment, Long timeout, Integer bundleStartLevel) throws MojoExecutionException, MojoFailureException {
+    private Long deploy(File deployment, Long timeout, Integer bundleStartLevel) throws MojoExecutionException, MojoFailureException {
+        Long startTime = System.currentTimeMillis();
+        StackSampler.context(String.format("bundle:%s", deployment.getName()));
         try {
             final KarafJMXConnector fuseJMXConnector = KarafJMXConnector.getInstance(timeout);
             final Long bundleId = fuseJMXConnector.install(deployment);
@@ -290,13 +839,8 @@ public class Start extends AbstractGoal {
             fuseJMXConnector.start(bundleId);
             Bundle bundle = fuseJMXConnector.getBundle(bundleId);
             waitForBundleState(fuseJMXConnector, bundle);
-            LOG.info("[ {} ] {}.{} {}, [ {} ] [ {} ]",
-                    bundle.getId(),
-                    bundle.getName(),
-                    bundle.getVersion(),
-                    bundle.getState(),
-                    bundle.getBlueprintState() != null ? bundle.getBlueprintState() : "",
-                    bundle.getSpringState() != null ? bundle.getSpringState() : "");
+            timings.put(String.format("bundle:%s", bundle.getName()), System.currentTimeMillis() - startTime);
+            log(bundle);
             return bundleId;
         } catch (IOException | MalformedObjectNameException | InstanceNotFoundException | MBeanException | ReflectionException ex) {
             new Shutdown().execute();
@@ -308,13 +852,7 @@ public class Start extends AbstractGoal {
         try {
             KarafJMXConnector karafJMXConnector = KarafJMXConnector.getInstance(timeout);
             for (Bundle bundle : karafJMXConnector.list()) {
-                LOG.info("[ {} ] {}.{} {}, [ {} ] [ {} ]",
-                        bundle.getId(),
-                        bundle.getName(),
-                        bundle.getVersion(),
-                        bundle.getState(),
-                        bundle.getBlueprintState() != null ? bundle.getBlueprintState() : "",
-                        bundle.getSpringState() != null ? bundle.getSpringState() : "");
+                log(bundle);
             }
         } catch (MalformedObjectNameException | InstanceNotFoundException | MBeanException | ReflectionException | IOException ex) {
             new Shutdown().execute();
@@ -322,6 +860,16 @@ public class Start extends AbstractGoal {
         }
     }
 
+    private static void log(Bundle bundle) {
+        LOG.info("[ {} ] {}.{} {}, [ {} ] [ {} ]",
+                bundle.getId(),
+                bundle.getName(),
+                bundle.getVersion(),
+                bundle.getState(),
+                bundle.getBlueprintState() != null ? bundle.getBlueprintState() : "",
+                bundle.getSpringState() != null ? bundle.getSpringState() : "");
+    }
+
     private static void waitForBundleState(final KarafJMXConnector fuseJMXConnector, final Bundle bundle) {
         try {
             if (!bundle.getState().equals(Bundle.State.ACTIVE)) {
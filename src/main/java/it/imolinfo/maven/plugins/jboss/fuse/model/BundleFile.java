@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.model;
+
+import java.io.File;
+
+/**
+ * A resolved bundle to deploy, with its optional start level.
+ *
+ * @author giacomo
+ */
+public class BundleFile {
+
+    private File file;
+    private Integer startLevel;
+
+    public BundleFile() {
+    }
+
+    public BundleFile(File file, Integer startLevel) {
+        this.file = file;
+        this.startLevel = startLevel;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public void setFile(File file) {
+        this.file = file;
+    }
+
+    public Integer getStartLevel() {
+        return startLevel;
+    }
+
+    public void setStartLevel(Integer startLevel) {
+        this.startLevel = startLevel;
+    }
+
+}
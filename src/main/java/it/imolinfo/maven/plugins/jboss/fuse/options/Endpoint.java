@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.options;
+
+/**
+ *
+ * @author giacomo
+ */
+public class Endpoint {
+    public static final String DEFAULT_METHOD = "GET";
+    public static final Integer DEFAULT_EXPECTED_STATUS = 200;
+    private String url;
+    private String method = DEFAULT_METHOD;
+    private String body;
+    private String contentType;
+    private Integer expectedStatus = DEFAULT_EXPECTED_STATUS;
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public void setMethod(String method) {
+        this.method = method;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public Integer getExpectedStatus() {
+        return expectedStatus;
+    }
+
+    public void setExpectedStatus(Integer expectedStatus) {
+        this.expectedStatus = expectedStatus;
+    }
+
+}
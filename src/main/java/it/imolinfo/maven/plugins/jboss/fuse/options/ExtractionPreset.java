@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.options;
+
+/**
+ * Entries of the distribution archive skipped during extraction. Patterns are
+ * relative to the archive root, whose first segment is the distribution
+ * directory.
+ *
+ * @author giacomo
+ */
+public enum ExtractionPreset {
+    FULL(),
+    MINIMAL("*/quickstarts/**", "*/extras/**", "*/licenses/**", "*/docs/**");
+
+    private final String[] excludes;
+
+    ExtractionPreset(String... excludes) {
+        this.excludes = excludes;
+    }
+
+    public String[] getExcludes() {
+        return excludes.clone();
+    }
+
+}
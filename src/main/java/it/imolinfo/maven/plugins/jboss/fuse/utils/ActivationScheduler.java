@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import it.imolinfo.maven.plugins.jboss.fuse.model.Bundle;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanException;
+import javax.management.ReflectionException;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.awaitility.Awaitility;
+import org.awaitility.Duration;
+import org.awaitility.core.ConditionTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Starts installed bundles grouped by start level: every bundle of a level is
+ * started at the same time and the next level begins once the whole level is
+ * active.
+ *
+ * @author giacomo
+ */
+public class ActivationScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ActivationScheduler.class);
+
+    /**
+     * Start level assigned by Karaf to bundles installed without an explicit
+     * one (karaf.startlevel.bundle)
+     */
+    public static final Integer DEFAULT_START_LEVEL = 80;
+    private static final Integer MAX_THREADS = 8;
+
+    private final KarafJMXConnector connector;
+
+    public ActivationScheduler(KarafJMXConnector connector) {
+        this.connector = connector;
+    }
+
+    /**
+     * Starts the bundles level by level
+     *
+     * @param bundleLevels Installed bundle ids with their start level (null
+     * for the default start level)
+     * @throws MojoExecutionException
+     */
+    public void activate(Map<Long, Integer> bundleLevels) throws MojoExecutionException {
+        TreeMap<Integer, List<Long>> levels = new TreeMap<>();
+        bundleLevels.forEach((bundleId, startLevel) -> {
+            Integer level = startLevel != null ? startLevel : DEFAULT_START_LEVEL;
+            levels.computeIfAbsent(level, key -> new ArrayList<>()).add(bundleId);
+        });
+        if (levels.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(bundleLevels.size(), MAX_THREADS));
+        try {
+            for (Map.Entry<Integer, List<Long>> level : levels.entrySet()) {
+                LOG.info("Start {} bundles at start level {}", level.getValue().size(), level.getKey());
+                List<Future<Void>> starts = new ArrayList<>();
+                for (Long bundleId : level.getValue()) {
+                    starts.add(executor.submit(() -> {
+                        connector.start(bundleId);
+                        return null;
+                    }));
+                }
+                for (Future<Void> start : starts) {
+                    start.get();
+                }
+                waitForLevel(level.getKey(), level.getValue());
+            }
+        } catch (ExecutionException ex) {
+            throw new MojoExecutionException(ex.getCause().getMessage(), ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException(ex.getMessage(), ex);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void waitForLevel(Integer level, List<Long> bundleIds) throws ExecutionException {
+        // A bundle already active emits no STARTED notification: seed from its current state
+        List<Long> pending = new ArrayList<>();
+        for (Long bundleId : bundleIds) {
+            try {
+                if (!connector.isActive(bundleId) && !connector.getBundle(bundleId).getState().equals(Bundle.State.ACTIVE)) {
+                    pending.add(bundleId);
+                }
+            } catch (InstanceNotFoundException | MBeanException | ReflectionException | IOException e) {
+                throw new ExecutionException(e);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            Awaitility.await().atMost(Duration.TEN_SECONDS).until((Callable<Boolean>) () -> {
+                LOG.debug("Wait for start level {}", level);
+                return pending.stream().allMatch(connector::isActive);
+            });
+        } catch (ConditionTimeoutException ex) {
+            // Notifications may have been missed: check the remaining bundles explicitly
+            for (Long bundleId : pending) {
+
+                try {
+                    if (!connector.isActive(bundleId) && !connector.getBundle(bundleId).getState().equals(Bundle.State.ACTIVE)) {
+                        LOG.warn("Bundle {} not active at start level {}", bundleId, level);
+                    }
+                } catch (InstanceNotFoundException | MBeanException | ReflectionException | IOException e) {
+                    throw new ExecutionException(e);
+                }
+            }
+        }
+    }
+
+}
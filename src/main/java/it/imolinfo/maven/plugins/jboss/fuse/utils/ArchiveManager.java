@@ -17,6 +17,7 @@ package it.imolinfo.maven.plugins.jboss.fuse.utils;
 
 import it.imolinfo.maven.plugins.jboss.fuse.AbstractGoal;
 import java.io.File;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -24,6 +25,10 @@ import org.codehaus.plexus.archiver.AbstractUnArchiver;
 import org.codehaus.plexus.archiver.tar.TarBZip2UnArchiver;
 import org.codehaus.plexus.archiver.tar.TarGZipUnArchiver;
 import org.codehaus.plexus.archiver.zip.ZipUnArchiver;
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.codehaus.plexus.components.io.fileselectors.FileSelector;
+import org.codehaus.plexus.components.io.fileselectors.IncludeExcludeFileSelector;
+import org.codehaus.plexus.components.io.resources.PlexusIoResource;
 import org.codehaus.plexus.logging.console.ConsoleLogger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,6 +41,8 @@ public class ArchiveManager {
 
     private static final Logger LOG = LoggerFactory.getLogger(AbstractGoal.class);
 
+    private static final Long MB = 1024 * 1024L;
+
     private ArchiveManager() {
     }
 
@@ -48,6 +55,45 @@ public class ArchiveManager {
      * @throws MojoExecutionException
      */
     public static void extract(String archivePath, String destDirectory) throws MojoExecutionException {
+        extract(archivePath, destDirectory, null, null);
+    }
+
+    /**
+     * Estrae un archivio sulla base dell'estensione, saltando le entry escluse
+     * dai filtri senza decomprimerle ne' scriverle
+     *
+     * @param archivePath Percorso all'archivio
+     * @param destDirectory Directory di destinazione dove estrarre i files
+     * @param includes Pattern delle entry da estrarre (null per tutte)
+     * @param excludes Pattern delle entry da saltare (null per nessuna)
+     * @throws MojoExecutionException
+     */
+    public static void extract(String archivePath, String destDirectory, String[] includes, String[] excludes) throws MojoExecutionException {
+        CountingFileSelector fileSelector = new CountingFileSelector();
+        fileSelector.setUseDefaultExcludes(false);
+        if (includes != null && includes.length > 0) {
+            fileSelector.setIncludes(includes);
+        }
+        if (excludes != null && excludes.length > 0) {
+            fileSelector.setExcludes(excludes);
+        }
+        extract(archivePath, destDirectory, fileSelector);
+    }
+
+    /**
+     * Estrae dall'archivio solo le entry indicate, con il nome esatto che
+     * hanno nell'archivio
+     *
+     * @param archivePath Percorso all'archivio
+     * @param destDirectory Directory di destinazione dove estrarre i files
+     * @param entries Nomi delle entry da estrarre
+     * @throws MojoExecutionException
+     */
+    public static void extract(String archivePath, String destDirectory, Set<String> entries) throws MojoExecutionException {
+        extract(archivePath, destDirectory, new EntryFileSelector(entries));
+    }
+
+    private static void extract(String archivePath, String destDirectory, CountingFileSelector fileSelector) throws MojoExecutionException {
         final AbstractUnArchiver abstractUnArchiver;
         Pattern p = Pattern.compile(".*\\.([^.]+)$");
         Matcher m = p.matcher(archivePath.toLowerCase());
@@ -77,7 +123,59 @@ public class ArchiveManager {
         File destination = new File(destDirectory);
         destination.mkdirs();
         abstractUnArchiver.setDestDirectory(destination);
+        abstractUnArchiver.setFileSelectors(new FileSelector[]{fileSelector});
+        long start = System.currentTimeMillis();
         abstractUnArchiver.extract();
+        LOG.info("Extracted {} entries ({} MB) in {} ms, skipped {} entries ({} MB)",
+                fileSelector.selectedEntries, fileSelector.selectedBytes / MB,
+                System.currentTimeMillis() - start,
+                fileSelector.skippedEntries, fileSelector.skippedBytes / MB);
+    }
+
+    static class CountingFileSelector extends IncludeExcludeFileSelector {
+
+        private long selectedEntries;
+        private long selectedBytes;
+        private long skippedEntries;
+        private long skippedBytes;
+
+        @Override
+        public boolean isSelected(FileInfo fileInfo) {
+            boolean selected = select(fileInfo);
+            if (fileInfo.isFile()) {
+                long size = fileInfo instanceof PlexusIoResource ? Math.max(((PlexusIoResource) fileInfo).getSize(), 0) : 0;
+                if (selected) {
+                    selectedEntries++;
+                    selectedBytes += size;
+                } else {
+                    skippedEntries++;
+                    skippedBytes += size;
+                }
+            }
+            return selected;
+        }
+
+        protected boolean select(FileInfo fileInfo) {
+            return super.isSelected(fileInfo);
+        }
+    }
+
+    static class EntryFileSelector extends CountingFileSelector {
+
+        private final Set<String> entries;
+
+        EntryFileSelector(Set<String> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        protected boolean select(FileInfo fileInfo) {
+            String entry = fileInfo.getName().replace('\\', '/');
+            while (entry.startsWith("/")) {
+                entry = entry.substring(1);
+            }
+            return entries.contains(entry);
+        }
     }
 
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import javax.management.MBeanServerConnection;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connection to the local Karaf JVM through the Attach API: the plugin
+ * attaches to the JVM, starts its local management agent and connects to its
+ * address, with no RMI registry lookup and no credentials. Falls back to RMI
+ * when attach is not possible.
+ *
+ * @author giacomo
+ */
+public class AttachConnectionFactory implements MBeanServerConnectionFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AttachConnectionFactory.class);
+
+    private static final String VIRTUAL_MACHINE = "com.sun.tools.attach.VirtualMachine";
+    private static Class<?> virtualMachineClass;
+
+    private final File karafHome;
+    private final Long pid;
+    private final RmiConnectionFactory fallback = new RmiConnectionFactory();
+    private JMXConnector jmxConnector;
+    private Boolean attached = Boolean.FALSE;
+
+    /**
+     * @param karafHome Karaf home, identifies the JVM when the pid is unknown
+     * @param pid Karaf JVM pid, or null
+     */
+    public AttachConnectionFactory(File karafHome, Long pid) {
+        this.karafHome = karafHome.getAbsoluteFile();
+        this.pid = pid;
+    }
+
+    @Override
+    public MBeanServerConnection connect() throws IOException {
+        Long startTime = System.currentTimeMillis();
+        try {
+            String address = localConnectorAddress();
+            if (address != null) {
+                jmxConnector = JMXConnectorFactory.connect(new JMXServiceURL(address));
+                attached = Boolean.TRUE;
+                LOG.info("Connected to the local management agent {} in {} ms", address, System.currentTimeMillis() - startTime);
+                return jmxConnector.getMBeanServerConnection();
+            }
+        } catch (IOException | ReflectiveOperationException | RuntimeException ex) {
+            LOG.debug(ex.getMessage(), ex);
+        }
+        attached = Boolean.FALSE;
+        MBeanServerConnection connection = fallback.connect();
+        LOG.info("Attach not possible, connected through RMI in {} ms", System.currentTimeMillis() - startTime);
+        return connection;
+    }
+
+    /**
+     * @return true if the last connection went through the local management
+     * agent, false if it fell back to RMI
+     */
+    public Boolean isAttached() {
+        return attached;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (jmxConnector != null) {
+            jmxConnector.close();
+            jmxConnector = null;
+        }
+        fallback.close();
+    }
+
+    private String localConnectorAddress() throws IOException, ReflectiveOperationException {
+        Class<?> vmClass = virtualMachineClass();
+        for (String id : candidates(vmClass)) {
+            Object vm;
+            try {
+                vm = vmClass.getMethod("attach", String.class).invoke(null, id);
+            } catch (InvocationTargetException ex) {
+                LOG.debug("Attach to {} failed: {}", id, ex.getCause().getMessage());
+                continue;
+            }
+            try {
+                Properties systemProperties = (Properties) vmClass.getMethod("getSystemProperties").invoke(vm);
+                if (karafHome.equals(new File(systemProperties.getProperty("karaf.home", "")).getAbsoluteFile())) {
+                    return (String) vmClass.getMethod("startLocalManagementAgent").invoke(vm);
+                }
+            } finally {
+                vmClass.getMethod("detach").invoke(vm);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The known pid, otherwise the JVMs running Karaf Main
+     */
+    private List<String> candidates(Class<?> vmClass) throws ReflectiveOperationException {
+        List<String> candidates = new ArrayList<>();
+        if (pid != null) {
+            candidates.add(String.valueOf(pid));
+            return candidates;
+        }
+        for (Object descriptor : (List<?>) vmClass.getMethod("list").invoke(null)) {
+            String displayName = (String) descriptor.getClass().getMethod("displayName").invoke(descriptor);
+            if (displayName != null && displayName.startsWith(KarafProcess.MAIN_CLASS)) {
+                candidates.add((String) descriptor.getClass().getMethod("id").invoke(descriptor));
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * The Attach API is in the jdk.attach module since Java 9 and in the JDK
+     * tools.jar before
+     */
+    private static synchronized Class<?> virtualMachineClass() throws ClassNotFoundException, MalformedURLException {
+        if (virtualMachineClass == null) {
+            try {
+                virtualMachineClass = Class.forName(VIRTUAL_MACHINE);
+            } catch (ClassNotFoundException ex) {
+                File toolsJar = new File(System.getProperty("java.home"), "../lib/tools.jar");
+                if (!toolsJar.exists()) {
+                    throw ex;
+                }
+                virtualMachineClass = Class.forName(VIRTUAL_MACHINE, true,
+                        new URLClassLoader(new URL[]{toolsJar.toURI().toURL()}, AttachConnectionFactory.class.getClassLoader()));
+            }
+        }
+        return virtualMachineClass;
+    }
+
+}
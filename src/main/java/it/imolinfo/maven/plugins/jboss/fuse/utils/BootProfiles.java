@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import it.imolinfo.maven.plugins.jboss.fuse.options.BootProfile;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies a boot profile to the Karaf features configuration, and keeps the
+ * last boot time and resident memory of each profile to report the savings.
+ *
+ * @author giacomo
+ */
+public class BootProfiles {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BootProfiles.class);
+
+    public static final String FEATURES_CFG_FILE_NAME = "org.apache.karaf.features.cfg";
+    private static final String FEATURES_BOOT = "featuresBoot";
+    // The key alone, featuresBootAsynchronous is a different property
+    private static final Pattern FEATURES_BOOT_KEY = Pattern.compile("^\\s*featuresBoot\\s*[=:\\s].*");
+    private static final Long MB = 1024 * 1024L;
+
+    private BootProfiles() {
+    }
+
+    /**
+     * Rewrites featuresBoot with the profile core features and the requested
+     * features; the stock profile leaves the file untouched
+     *
+     * @param etc Karaf etc directory
+     * @param profile Boot profile
+     * @param features Requested features
+     * @throws IOException
+     */
+    public static void apply(File etc, BootProfile profile, List<String> features) throws IOException {
+        if (profile == BootProfile.STOCK) {
+            return;
+        }
+        Set<String> featuresBoot = new LinkedHashSet<>(Arrays.asList(profile.getFeatures()));
+        featuresBoot.addAll(features);
+        File featuresCfg = new File(etc, FEATURES_CFG_FILE_NAME);
+        List<String> lines = new ArrayList<>();
+        Boolean continuation = Boolean.FALSE;
+        for (String line : FileUtils.readLines(featuresCfg, "UTF-8")) {
+            // featuresBoot may span several lines ending with a backslash
+            Boolean key = !continuation && FEATURES_BOOT_KEY.matcher(line).matches();
+            if (continuation || key) {
+                continuation = line.trim().endsWith("\\");
+                if (key) {
+                    lines.add(String.format("%s=%s", FEATURES_BOOT, String.join(",", featuresBoot)));
+                }
+                continue;
+            }
+            lines.add(line);
+        }
+        FileUtils.writeLines(featuresCfg, "UTF-8", lines);
+        LOG.info("Boot profile {}: {}", profile, String.join(",", featuresBoot));
+    }
+
+    /**
+     * Stores the boot time and resident memory of the profile and compares
+     * them with the last measures of the stock profile
+     *
+     * @param file Measures file
+     * @param profile Boot profile
+     * @param bootTime Boot time, in milliseconds
+     * @param rss Resident memory after boot, in bytes, or null
+     * @throws IOException
+     */
+    public static void report(File file, BootProfile profile, Long bootTime, Long rss) throws IOException {
+        Properties measures = new Properties();
+        if (file.exists()) {
+            try (InputStream inputStream = Files.newInputStream(file.toPath())) {
+                measures.load(inputStream);
+            }
+        }
+        measures.setProperty(String.format("%s.boot", profile), String.valueOf(bootTime));
+        if (rss != null) {
+            measures.setProperty(String.format("%s.rss", profile), String.valueOf(rss));
+        }
+        file.getParentFile().mkdirs();
+        try (OutputStream outputStream = Files.newOutputStream(file.toPath())) {
+            measures.store(outputStream, "jboss-fuse-maven-plugin boot profiles");
+        }
+        LOG.info("Boot profile {}: boot {} ms, resident memory {} MB", profile, bootTime, rss != null ? rss / MB : "unknown");
+        String stockBoot = measures.getProperty(String.format("%s.boot", BootProfile.STOCK));
+        if (profile == BootProfile.STOCK || stockBoot == null) {
+            return;
+        }
+        String stockRss = measures.getProperty(String.format("%s.rss", BootProfile.STOCK));
+        LOG.info("Saved compared with the last {} boot: {} ms, resident memory {} MB", BootProfile.STOCK,
+                Long.parseLong(stockBoot) - bootTime, stockRss != null && rss != null ? (Long.parseLong(stockRss) - rss) / MB : "unknown");
+    }
+
+}
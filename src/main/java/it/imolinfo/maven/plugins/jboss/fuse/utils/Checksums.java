@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+
+/**
+ *
+ * @author giacomo
+ */
+public class Checksums {
+
+    public static final String SHA1 = "SHA-1";
+    public static final String SHA256 = "SHA-256";
+
+    private Checksums() {
+    }
+
+    public static MessageDigest digest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+
+    public static String sha1(String value) {
+        return hex(digest(SHA1).digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+
+    /**
+     * Computes several digests of a file in a single read
+     *
+     * @param file File
+     * @param algorithms Digest algorithms
+     * @return The hex digests, in the order of the algorithms
+     * @throws IOException
+     */
+    public static String[] checksums(File file, String... algorithms) throws IOException {
+        MessageDigest[] digests = new MessageDigest[algorithms.length];
+        InputStream inputStream = Files.newInputStream(file.toPath());
+        for (int i = 0; i < algorithms.length; i++) {
+            digests[i] = digest(algorithms[i]);
+            inputStream = new DigestInputStream(inputStream, digests[i]);
+        }
+        try (InputStream digestInputStream = inputStream) {
+            IOUtils.copyLarge(digestInputStream, NullOutputStream.NULL_OUTPUT_STREAM);
+        }
+        String[] checksums = new String[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            checksums[i] = hex(digests[i].digest());
+        }
+        return checksums;
+    }
+
+    public static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+
+/**
+ * Measures the setup time of a connection and the latency of a single remote
+ * invocation through it.
+ *
+ * @author giacomo
+ */
+public class ConnectionLatency {
+
+    private static final String RUNTIME = "java.lang:type=Runtime";
+
+    private final Long setupTime;
+    private final Double invocationLatency;
+
+    private ConnectionLatency(Long setupTime, Double invocationLatency) {
+        this.setupTime = setupTime;
+        this.invocationLatency = invocationLatency;
+    }
+
+    /**
+     * Opens a new connection, times it, then times getAttribute calls
+     *
+     * @param factory Connection factory
+     * @param invocations Number of invocations
+     * @return The setup time and the median invocation latency
+     * @throws IOException
+     * @throws JMException
+     */
+    public static ConnectionLatency measure(MBeanServerConnectionFactory factory, Integer invocations) throws IOException, JMException {
+        Long startTime = System.nanoTime();
+        try {
+            MBeanServerConnection connection = factory.connect();
+            Long setupTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            ObjectName runtime = new ObjectName(RUNTIME);
+            List<Long> latencies = new ArrayList<>();
+            for (int i = 0; i < invocations; i++) {
+                Long invocationStartTime = System.nanoTime();
+                connection.getAttribute(runtime, "Uptime");
+                latencies.add(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - invocationStartTime));
+            }
+            return new ConnectionLatency(setupTime, Statistics.median(latencies));
+        } finally {
+            factory.close();
+        }
+    }
+
+    public Long getSetupTime() {
+        return setupTime;
+    }
+
+    /**
+     * @return Median invocation latency, in microseconds
+     */
+    public Double getInvocationLatency() {
+        return invocationLatency;
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import it.imolinfo.maven.plugins.jboss.fuse.model.BundleFile;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lockfile of the resolved bundle lists: for each list, in install order, the
+ * file path, size, last modified time and start level. The plan is reused
+ * when the inputs hash matches and every file has the same size and last
+ * modified time; the files are not read, so this is no integrity check.
+ *
+ * @author giacomo
+ */
+public class DeploymentPlan {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DeploymentPlan.class);
+
+    private static final String INPUTS = "inputs";
+    private static final String SIZE = "size";
+
+    private DeploymentPlan() {
+    }
+
+    public static String inputsHash(String... inputs) {
+        StringBuilder sb = new StringBuilder();
+        for (String input : inputs) {
+            sb.append(input).append('\n');
+        }
+        return Checksums.sha1(sb.toString());
+    }
+
+    /**
+     * Reads the plan
+     *
+     * @param lockFile Lockfile
+     * @param inputsHash Hash of the current inputs
+     * @return The bundle lists by name, or null if the lockfile is missing,
+     * stale or refers to changed files
+     * @throws IOException
+     */
+    public static Map<String, List<BundleFile>> load(File lockFile, String inputsHash) throws IOException {
+        if (!lockFile.exists()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream inputStream = Files.newInputStream(lockFile.toPath())) {
+            properties.load(inputStream);
+        }
+        if (!inputsHash.equals(properties.getProperty(INPUTS))) {
+            LOG.info("Deployment plan inputs changed");
+            return null;
+        }
+        Map<String, List<BundleFile>> plan = new LinkedHashMap<>();
+        for (String list : properties.getProperty("lists", "").split(",")) {
+            if (list.isEmpty()) {
+                continue;
+            }
+            List<BundleFile> bundleFiles = new ArrayList<>();
+            for (int i = 0; properties.containsKey(key(list, i, "path")); i++) {
+                File file = new File(properties.getProperty(key(list, i, "path")));
+                if (!file.isFile() || file.length() != Long.parseLong(properties.getProperty(key(list, i, SIZE)))
+                        || file.lastModified() != Long.parseLong(properties.getProperty(key(list, i, "mtime")))) {
+                    LOG.info("Deployment plan file changed: {}", file);
+                    return null;
+                }
+                String level = properties.getProperty(key(list, i, "level"));
+                bundleFiles.add(new BundleFile(file, level != null ? Integer.valueOf(level) : null));
+            }
+            plan.put(list, bundleFiles);
+        }
+        return plan;
+    }
+
+    public static void write(File lockFile, String inputsHash, Map<String, List<BundleFile>> plan) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(INPUTS, inputsHash);
+        properties.setProperty("lists", String.join(",", plan.keySet()));
+        for (Map.Entry<String, List<BundleFile>> list : plan.entrySet()) {
+            for (int i = 0; i < list.getValue().size(); i++) {
+                BundleFile bundleFile = list.getValue().get(i);
+                File file = bundleFile.getFile().getAbsoluteFile();
+                properties.setProperty(key(list.getKey(), i, "path"), file.getPath());
+                properties.setProperty(key(list.getKey(), i, SIZE), String.valueOf(file.length()));
+                properties.setProperty(key(list.getKey(), i, "mtime"), String.valueOf(file.lastModified()));
+                if (bundleFile.getStartLevel() != null) {
+                    properties.setProperty(key(list.getKey(), i, "level"), String.valueOf(bundleFile.getStartLevel()));
+                }
+            }
+        }
+        lockFile.getParentFile().mkdirs();
+        try (OutputStream outputStream = Files.newOutputStream(lockFile.toPath())) {
+            properties.store(outputStream, "jboss-fuse-maven-plugin deployment plan");
+        }
+    }
+
+    private static String key(String list, Integer index, String field) {
+        return String.format("%s.%d.%s", list, index, field);
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import it.imolinfo.maven.plugins.jboss.fuse.options.Deployment;
+import java.io.IOException;
+import java.util.Set;
+import java.util.regex.Pattern;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Waits for deployments to be ready: bundle state and, when requested, state
+ * of the Camel contexts and routes registered by the bundle. Checks run when a
+ * Camel MBean is registered, with the deployment wait time as fallback
+ * interval.
+ *
+ * @author giacomo
+ */
+public class DeploymentWatcher implements NotificationListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DeploymentWatcher.class);
+
+    private static final String CAMEL_DOMAIN = "org.apache.camel";
+    private static final Long DEFAULT_WAIT_TIME = 1000L;
+
+    private final KarafJMXConnector connector;
+    private final Object monitor = new Object();
+
+    public DeploymentWatcher(KarafJMXConnector connector) {
+        this.connector = connector;
+    }
+
+    public void register() throws InstanceNotFoundException, IOException {
+        connector.getConnection().addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this, null, null);
+    }
+
+    public void unregister() {
+        try {
+            connector.getConnection().removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this);
+        } catch (InstanceNotFoundException | ListenerNotFoundException | IOException ex) {
+            LOG.debug(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (notification instanceof MBeanServerNotification
+                && CAMEL_DOMAIN.equals(((MBeanServerNotification) notification).getMBeanName().getDomain())) {
+            synchronized (monitor) {
+                monitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until the deployment is ready
+     *
+     * @param bundleId Deployed bundle id
+     * @param deployment Deployment options
+     * @param startTime Deployment start time, in milliseconds
+     * @param timeout Timeout, in milliseconds
+     * @return The time to ready, in milliseconds
+     * @throws MojoExecutionException If the deployment is not ready within the
+     * timeout
+     */
+    public Long await(Long bundleId, Deployment deployment, Long startTime, Long timeout) throws MojoExecutionException {
+        Long waitTime = deployment.getWaitTime() != null ? deployment.getWaitTime() : DEFAULT_WAIT_TIME;
+        long deadline = startTime + timeout;
+        try {
+            while (!isReady(bundleId, deployment)) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new MojoExecutionException(String.format("Deployment %s not ready in %d ms", name(deployment), timeout));
+                }
+                synchronized (monitor) {
+                    monitor.wait(Math.min(waitTime, remaining));
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException(ex.getMessage(), ex);
+        } catch (JMException | IOException ex) {
+            throw new MojoExecutionException(ex.getMessage(), ex);
+        }
+        return System.currentTimeMillis() - startTime;
+    }
+
+    private Boolean isReady(Long bundleId, Deployment deployment) throws JMException, IOException {
+        String state = connector.getBundle(bundleId).getState().name();
+        if (!matches(deployment.getExpectedStatus(), state)) {
+            LOG.debug("Bundle {} state {}", bundleId, state);
+            return Boolean.FALSE;
+        }
+        if (deployment.getExpectedContextStatus() == null) {
+            return Boolean.TRUE;
+        }
+        MBeanServerConnection connection = connector.getConnection();
+        Boolean found = Boolean.FALSE;
+        for (ObjectName context : connection.queryNames(new ObjectName(String.format("%s:type=context,*", CAMEL_DOMAIN)), null)) {
+            if (!belongsTo(context, bundleId, deployment)) {
+                continue;
+            }
+            found = Boolean.TRUE;
+            if (!matches(deployment.getExpectedContextStatus(), String.valueOf(connection.getAttribute(context, "State")))) {
+                return Boolean.FALSE;
+            }
+            Set<ObjectName> routes = connection.queryNames(new ObjectName(String.format("%s:context=%s,type=routes,*",
+                    CAMEL_DOMAIN, context.getKeyProperty("context"))), null);
+            for (ObjectName route : routes) {
+                if (!matches(deployment.getExpectedContextStatus(), String.valueOf(connection.getAttribute(route, "State")))) {
+                    return Boolean.FALSE;
+                }
+            }
+        }
+        return found;
+    }
+
+    public static String name(Deployment deployment) {
+        return deployment.getDeploymentName() != null ? deployment.getDeploymentName() : deployment.getSource().getName();
+    }
+
+    private static Boolean belongsTo(ObjectName context, Long bundleId, Deployment deployment) {
+        String contextName = context.getKeyProperty("name");
+        if (deployment.getDeploymentName() != null && contextName != null) {
+            return deployment.getDeploymentName().equals(contextName.startsWith("\"") ? ObjectName.unquote(contextName) : contextName);
+        }
+        // Camel OSGi management name pattern: #bundleId#-#name#
+        return context.getKeyProperty("context").startsWith(String.format("%d-", bundleId));
+    }
+
+    private static Boolean matches(String expected, String actual) {
+        return Pattern.compile(expected, Pattern.CASE_INSENSITIVE).matcher(actual).matches();
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Karaf framework booted inside the build JVM, in a class loader isolated from
+ * the plugin one. Karaf registers its MBeans in the platform MBeanServer, so
+ * the connector reaches them through {@link PlatformConnectionFactory}.
+ * <p>
+ * Limitation: Karaf reads its layout from JVM-wide system properties, so
+ * karaf.home, karaf.base, karaf.data and the other layout properties are set
+ * in the Maven process until shutdown, and every plugin or in-process test
+ * running meanwhile sees them. java.io.tmpdir is restored as soon as the
+ * framework is launched.
+ *
+ * @author giacomo
+ */
+public class EmbeddedKaraf {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddedKaraf.class);
+
+    private static final String TMPDIR = "java.io.tmpdir";
+
+    private static URLClassLoader classLoader;
+    private static Object main;
+    private static final Map<String, String> previousSystemProperties = new HashMap<>();
+
+    private EmbeddedKaraf() {
+    }
+
+    /**
+     * Boots Karaf, unless it is already running
+     *
+     * @param home Karaf home
+     * @throws IOException
+     */
+    public static synchronized void start(File home) throws IOException {
+        if (main != null) {
+            LOG.info("Embedded jboss-fuse already running");
+            return;
+        }
+        File karafHome = home.getAbsoluteFile();
+        // Karaf Main reads its layout from the system properties
+        KarafProcess.systemProperties(karafHome).forEach((key, value) -> previousSystemProperties.put(key, System.setProperty(key, value)));
+        new File(karafHome, "data/tmp").mkdirs();
+        List<URL> urls = new ArrayList<>();
+        for (File jar : KarafProcess.classpath(karafHome)) {
+            urls.add(jar.toURI().toURL());
+        }
+        classLoader = new URLClassLoader(urls.toArray(new URL[urls.size()]), ClassLoader.getSystemClassLoader().getParent());
+        Thread thread = Thread.currentThread();
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(classLoader);
+        try {
+            Object karafMain = classLoader.loadClass(KarafProcess.MAIN_CLASS).getConstructor(String[].class).newInstance((Object) new String[0]);
+            karafMain.getClass().getMethod("launch").invoke(karafMain);
+            main = karafMain;
+            restore(TMPDIR);
+            LOG.info("Embedded jboss-fuse started");
+        } catch (ReflectiveOperationException ex) {
+            release();
+            throw new IOException(String.format("Embedded jboss-fuse launch failed: %s", ex.getCause() != null ? ex.getCause().getMessage() : ex.getMessage()), ex);
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    public static Boolean isStarted() {
+        return main != null;
+    }
+
+    /**
+     * Stops the framework, waiting for the bundles to stop, and releases the
+     * class loader
+     */
+    public static synchronized void stop() {
+        if (main == null) {
+            return;
+        }
+        Long startTime = System.currentTimeMillis();
+        Thread thread = Thread.currentThread();
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(classLoader);
+        try {
+            main.getClass().getMethod("destroy").invoke(main);
+            LOG.info("Embedded jboss-fuse stopped in {} ms", System.currentTimeMillis() - startTime);
+        } catch (ReflectiveOperationException ex) {
+            LOG.error(ex.getMessage(), ex);
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+            release();
+        }
+    }
+
+    private static void release() {
+        main = null;
+        try {
+            classLoader.close();
+        } catch (IOException ex) {
+            LOG.debug(ex.getMessage(), ex);
+        }
+        classLoader = null;
+        for (String key : new ArrayList<>(previousSystemProperties.keySet())) {
+            restore(key);
+        }
+    }
+
+    private static void restore(String key) {
+        if (!previousSystemProperties.containsKey(key)) {
+            return;
+        }
+        String value = previousSystemProperties.remove(key);
+        if (value == null) {
+            System.clearProperty(key);
+        } else {
+            System.setProperty(key, value);
+        }
+    }
+
+}
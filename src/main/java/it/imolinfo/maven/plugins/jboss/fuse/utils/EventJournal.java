@@ -0,0 +1,182 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Journal of the container events. The JMX listeners only enqueue the events
+ * in a bounded lock-free queue; a background writer appends one JSON object
+ * per line to the journal.
+ *
+ * @author giacomo
+ */
+public class EventJournal {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EventJournal.class);
+    private static volatile EventJournal instance;
+
+    public static final String JOURNAL_FILE_NAME = "fuse-events.jsonl";
+    private static final String PHASE = "phase";
+    private static final Integer CAPACITY = 65536;
+    private static final Long IDLE_PARK = TimeUnit.MILLISECONDS.toNanos(20);
+
+    /**
+     * Starts the journal, unless it is already running
+     *
+     * @param directory Output directory
+     * @throws IOException
+     */
+    public static synchronized void start(File directory) throws IOException {
+        if (instance == null) {
+            directory.mkdirs();
+            instance = new EventJournal(new File(directory, JOURNAL_FILE_NAME));
+            instance.writer.start();
+        }
+    }
+
+    /**
+     * Enqueues an event without blocking; the event is dropped if the queue is
+     * full. When the journal is not running bundle and feature events are
+     * logged as they arrive
+     *
+     * @param source Event source: bundle, feature or phase
+     * @param id Bundle id, feature name or phase name
+     * @param name Bundle symbolic name or feature version
+     * @param type Event type
+     */
+    public static void publish(String source, Object id, Object name, Object type) {
+        EventJournal journal = instance;
+        if (journal != null) {
+            journal.offer(new Event(System.currentTimeMillis(), source, field(id), field(name), field(type)));
+        } else if (!PHASE.equals(source)) {
+            LOG.info("{} {} {}: {}", source, id, name, type);
+        }
+    }
+
+    public static void mark(String phase) {
+        publish(PHASE, phase, null, "START");
+    }
+
+    private static String field(Object value) {
+        return value != null ? String.valueOf(value) : "";
+    }
+
+    /**
+     * Writes the pending events and stops the journal
+     */
+    public static synchronized void stop() {
+        if (instance != null) {
+            EventJournal journal = instance;
+            instance = null;
+            journal.running = Boolean.FALSE;
+            LockSupport.unpark(journal.writer);
+            try {
+                journal.writer.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            if (journal.dropped.get() > 0) {
+                LOG.warn("{} events dropped, queue full", journal.dropped.get());
+            }
+            LOG.info("{} events written in {}", journal.written, journal.file.getAbsolutePath());
+        }
+    }
+
+    private final File file;
+    private final Queue<Event> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile Boolean running = Boolean.TRUE;
+    // Written by the writer thread only
+    private Long written = 0L;
+
+    private EventJournal(File file) {
+        this.file = file;
+        this.writer = new Thread(this::write, "fuse-event-journal");
+        this.writer.setDaemon(true);
+    }
+
+    private void offer(Event event) {
+        if (size.incrementAndGet() > CAPACITY) {
+            size.decrementAndGet();
+            dropped.incrementAndGet();
+            return;
+        }
+        queue.offer(event);
+    }
+
+    private void write() {
+        try (BufferedWriter bufferedWriter = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (running || !queue.isEmpty()) {
+                Event event = queue.poll();
+                if (event == null) {
+                    bufferedWriter.flush();
+                    LockSupport.parkNanos(IDLE_PARK);
+                    continue;
+                }
+                size.decrementAndGet();
+                bufferedWriter.write(event.toJson());
+                bufferedWriter.newLine();
+                written++;
+                LOG.debug("{} {} {}: {}", event.source, event.id, event.name, event.type);
+            }
+        } catch (IOException ex) {
+            LOG.error(ex.getMessage(), ex);
+        }
+    }
+
+    static class Event {
+
+        private final Long timestamp;
+        private final String source;
+        private final String id;
+        private final String name;
+        private final String type;
+
+        Event(Long timestamp, String source, String id, String name, String type) {
+            this.timestamp = timestamp;
+            this.source = source;
+            this.id = id;
+            this.name = name;
+            this.type = type;
+        }
+
+        String toJson() {
+            return String.format("{\"ts\":%d,\"source\":\"%s\",\"id\":\"%s\",\"name\":\"%s\",\"type\":\"%s\"}", timestamp,
+                    StringEscapeUtils.escapeJson(source), StringEscapeUtils.escapeJson(id),
+                    StringEscapeUtils.escapeJson(name), StringEscapeUtils.escapeJson(type));
+        }
+    }
+
+}
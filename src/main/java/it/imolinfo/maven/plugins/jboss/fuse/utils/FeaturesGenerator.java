@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import it.imolinfo.maven.plugins.jboss.fuse.AbstractGoal;
+import it.imolinfo.maven.plugins.jboss.fuse.model.BundleFile;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * @author giacomo
+ */
+public class FeaturesGenerator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FeaturesGenerator.class);
+
+    private static final String FEATURES_NAMESPACE = "http://karaf.apache.org/xmlns/features/v1.2.0";
+
+    private FeaturesGenerator() {
+    }
+
+    /**
+     * Writes a Karaf features repository containing a single feature that
+     * depends on the given features and installs the given bundles
+     *
+     * @param featuresFile Features repository file to write
+     * @param featureName Name of the generated feature
+     * @param features Features the generated feature depends on
+     * @param bundles Bundles of the generated feature, in install order
+     * @throws IOException
+     */
+    public static void generate(File featuresFile, String featureName, List<String> features, List<BundleFile> bundles) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append(String.format("<features name=\"%s-repository\" xmlns=\"%s\">\n", escape(featureName), FEATURES_NAMESPACE));
+        sb.append(String.format("    <feature name=\"%s\">\n", escape(featureName)));
+        for (String feature : features) {
+            sb.append(String.format("        <feature>%s</feature>\n", escape(feature)));
+        }
+        for (BundleFile bundle : bundles) {
+            String location = String.format("%s%s", AbstractGoal.FILE_PREFIX, bundle.getFile().getAbsolutePath());
+            if (bundle.getStartLevel() != null) {
+                sb.append(String.format("        <bundle start-level=\"%d\">%s</bundle>\n", bundle.getStartLevel(), escape(location)));
+            } else {
+                sb.append(String.format("        <bundle>%s</bundle>\n", escape(location)));
+            }
+        }
+        sb.append("    </feature>\n");
+        sb.append("</features>\n");
+        LOG.info("Write feature {} in {}", featureName, featuresFile.getAbsolutePath());
+        FileUtils.write(featuresFile, sb.toString(), "UTF-8");
+    }
+
+    private static String escape(String value) {
+        return StringEscapeUtils.escapeXml10(value);
+    }
+
+}
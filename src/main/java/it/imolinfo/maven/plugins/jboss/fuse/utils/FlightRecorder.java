@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import java.io.File;
+import java.io.IOException;
+import javax.management.JMException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Java Flight Recorder recording of the container, driven through the
+ * DiagnosticCommand MBean of the container JMX connection.
+ *
+ * @author giacomo
+ */
+public class FlightRecorder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FlightRecorder.class);
+
+    public static final String RECORDING_FILE_NAME = "fuse.jfr";
+    public static final String SUMMARY_FILE_NAME = "fuse-jfr-summary.txt";
+    private static final String RECORDING_NAME = "jboss-fuse-maven-plugin";
+    private static final String DIAGNOSTIC_COMMAND = "com.sun.management:type=DiagnosticCommand";
+    private static final String[] SIGNATURE = {String[].class.getName()};
+    private static Boolean recording = Boolean.FALSE;
+
+    private FlightRecorder() {
+    }
+
+    /**
+     * Starts a recording, unless one is already running
+     *
+     * @param connection Container connection
+     * @param settings JFR settings, <code>default</code> or
+     * <code>profile</code>
+     * @throws JMException
+     * @throws IOException
+     */
+    public static synchronized void start(MBeanServerConnection connection, String settings) throws JMException, IOException {
+        if (recording) {
+            return;
+        }
+        ObjectName diagnosticCommand = new ObjectName(DIAGNOSTIC_COMMAND);
+        try {
+            // Oracle JDK 8 needs the commercial features unlocked, other JDKs do not have the command
+            connection.invoke(diagnosticCommand, "vmUnlockCommercialFeatures", new Object[]{new String[0]}, SIGNATURE);
+        } catch (JMException ex) {
+            LOG.debug(ex.getMessage(), ex);
+        }
+        LOG.info("Start flight recording with {} settings", settings);
+        LOG.debug("{}", connection.invoke(diagnosticCommand, "jfrStart",
+                new Object[]{new String[]{String.format("name=%s", RECORDING_NAME), String.format("settings=%s", settings)}}, SIGNATURE));
+        recording = Boolean.TRUE;
+    }
+
+    /**
+     * Stops the recording, dumps it and writes its summary
+     *
+     * @param connection Container connection
+     * @param directory Output directory
+     */
+    public static synchronized void stop(MBeanServerConnection connection, File directory) {
+        if (!recording) {
+            return;
+        }
+        recording = Boolean.FALSE;
+        File recordingFile = new File(directory, RECORDING_FILE_NAME).getAbsoluteFile();
+        try {
+            // The container runs on this host, so it writes the recording straight in the output directory
+            LOG.debug("{}", connection.invoke(new ObjectName(DIAGNOSTIC_COMMAND), "jfrStop",
+                    new Object[]{new String[]{String.format("name=%s", RECORDING_NAME), String.format("filename=%s", recordingFile.getPath())}}, SIGNATURE));
+        } catch (JMException | IOException ex) {
+            LOG.error(ex.getMessage(), ex);
+            return;
+        }
+        LOG.info("Flight recording written in {}", recordingFile);
+        if (!FlightRecordingSummary.isSupported()) {
+            LOG.info("jdk.jfr.consumer is not available in this JVM, no flight recording summary");
+            return;
+        }
+        File summaryFile = new File(directory, SUMMARY_FILE_NAME);
+        try {
+            FlightRecordingSummary.write(recordingFile, summaryFile);
+            LOG.info("Flight recording summary written in {}", summaryFile.getAbsolutePath());
+        } catch (IOException ex) {
+            LOG.error(ex.getMessage(), ex);
+        }
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Summary of a flight recording: hot methods, allocation by class and lock
+ * contention by monitor class. Needs the jdk.jfr.consumer API in the build
+ * JVM (JDK 8u262 or later), which is used by reflection so that the plugin
+ * still builds against the Java 8 API.
+ *
+ * @author giacomo
+ */
+public class FlightRecordingSummary {
+
+    private static final Integer TOP = 20;
+    private static final Long MB = 1024 * 1024L;
+    private static final String RECORDING_FILE = "jdk.jfr.consumer.RecordingFile";
+
+    private FlightRecordingSummary() {
+    }
+
+    public static Boolean isSupported() {
+        try {
+            Class.forName(RECORDING_FILE);
+            return Boolean.TRUE;
+        } catch (ClassNotFoundException ex) {
+            return Boolean.FALSE;
+        }
+    }
+
+    public static void write(File recordingFile, File summaryFile) throws IOException {
+        Map<String, Long> samples = new HashMap<>();
+        Map<String, Long> allocation = new HashMap<>();
+        Map<String, Long> contention = new HashMap<>();
+        Map<String, Long> contentionCount = new HashMap<>();
+        long totalSamples = 0;
+        try (AutoCloseable recording = open(recordingFile.toPath())) {
+            while ((Boolean) call(recording, "hasMoreEvents")) {
+                Object event = call(recording, "readEvent");
+                switch ((String) call(call(event, "getEventType"), "getName")) {
+                    case "jdk.ExecutionSample":
+                        String method = topFrame(call(event, "getStackTrace"));
+                        if (method != null) {
+                            samples.merge(method, 1L, Long::sum);
+                            totalSamples++;
+                        }
+                        break;
+                    case "jdk.ObjectAllocationInNewTLAB":
+                        allocation.merge(className(event, "objectClass"), (Long) call(event, "getLong", "tlabSize"), Long::sum);
+                        break;
+                    case "jdk.ObjectAllocationOutsideTLAB":
+                        allocation.merge(className(event, "objectClass"), (Long) call(event, "getLong", "allocationSize"), Long::sum);
+                        break;
+                    case "jdk.JavaMonitorEnter":
+                        String monitor = className(event, "monitorClass");
+                        contention.merge(monitor, ((Duration) call(event, "getDuration")).toMillis(), Long::sum);
+                        contentionCount.merge(monitor, 1L, Long::sum);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (IOException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+        StringBuilder summary = new StringBuilder(String.format("Hot methods (%d samples)%n", totalSamples));
+        for (Map.Entry<String, Long> entry : top(samples)) {
+            summary.append(String.format("%8.2f%% %s%n", 100.0 * entry.getValue() / totalSamples, entry.getKey()));
+        }
+        summary.append(String.format("%nAllocation (MB, TLAB and outside TLAB)%n"));
+        for (Map.Entry<String, Long> entry : top(allocation)) {
+            summary.append(String.format("%10.2f %s%n", (double) entry.getValue() / MB, entry.getKey()));
+        }
+        summary.append(String.format("%nLock contention (ms, count)%n"));
+        for (Map.Entry<String, Long> entry : top(contention)) {
+            summary.append(String.format("%10d %8d %s%n", entry.getValue(), contentionCount.get(entry.getKey()), entry.getKey()));
+        }
+        FileUtils.write(summaryFile, summary.toString(), "UTF-8");
+    }
+
+    private static AutoCloseable open(Path recordingFile) throws IOException {
+        try {
+            Constructor<?> constructor = Class.forName(RECORDING_FILE).getConstructor(Path.class);
+            return (AutoCloseable) constructor.newInstance(recordingFile);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException(ex.getCause().getMessage(), ex.getCause());
+        } catch (ReflectiveOperationException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Invokes a public method of the jdk.jfr API, with an optional String
+     * argument
+     */
+    private static Object call(Object target, String method, String... args) throws IOException {
+        try {
+            Class<?>[] types = new Class<?>[args.length];
+            Arrays.fill(types, String.class);
+            return target.getClass().getMethod(method, types).invoke(target, (Object[]) args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException(ex.getCause().getMessage(), ex.getCause());
+        } catch (ReflectiveOperationException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    private static String topFrame(Object stackTrace) throws IOException {
+        if (stackTrace == null) {
+            return null;
+        }
+        List<?> frames = (List<?>) call(stackTrace, "getFrames");
+        if (frames.isEmpty()) {
+            return null;
+        }
+        Object method = call(frames.get(0), "getMethod");
+        return String.format("%s.%s", call(call(method, "getType"), "getName"), call(method, "getName"));
+    }
+
+    private static String className(Object event, String field) throws IOException {
+        Object recordedClass = call(event, "getClass", field);
+        return recordedClass == null ? "unknown" : (String) call(recordedClass, "getName");
+    }
+
+    private static List<Map.Entry<String, Long>> top(Map<String, Long> values) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(values.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        return entries.subList(0, Math.min(TOP, entries.size()));
+    }
+
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Manifest of a pristine extraction, one entry per line:
+ * <code>path TAB size TAB mtime TAB crc32</code>, directories with size -1.
+ * The first line holds the hash of the extraction settings, a manifest of
+ * other settings is never used.
+ *
+ * @author giacomo
+ */
+public class InstanceManifest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InstanceManifest.class);
+
+    public static final String DATA_DIRECTORY_NAME = "data";
+    private static final String MANIFEST_EXTENSION = ".manifest";
+    private static final String SEPARATOR = "\t";
+    private static final String HEADER = "# ";
+    private static final Long DIRECTORY_SIZE = -1L;
+
+    private InstanceManifest() {
+    }
+
+    public static File file(File instanceDirectory) {
+        return new File(instanceDirectory.getAbsoluteFile().getParentFile(), instanceDirectory.getName() + MANIFEST_EXTENSION);
+    }
+
+    public static void delete(File instanceDirectory) {
+        FileUtils.deleteQuietly(file(instanceDirectory));
+    }
+
+    /**
+     * Records the instance just extracted. Symbolic links, as the shared
+     * system repository, are not part of the extraction and are skipped
+     *
+     * @param instanceDirectory Extracted instance
+     * @param settingsHash Hash of the archive and of the extraction filters
+     */
+    public static void write(File instanceDirectory, String settingsHash) throws MojoExecutionException {
+        long start = System.currentTimeMillis();
+        Path root = instanceDirectory.toPath();
+        List<Path> paths = new ArrayList<>();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (!dir.equals(root)) {
+                        paths.add(dir);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        paths.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            // The checksums are the expensive part, they are computed in parallel
+            List<String> lines = new ArrayList<>();
+            lines.add(HEADER + settingsHash);
+            lines.addAll(Arrays.asList(paths.parallelStream().map(path -> line(root, path)).toArray(String[]::new)));
+            FileUtils.writeLines(file(instanceDirectory), "UTF-8", lines);
+        } catch (IOException | UncheckedIOException ex) {
+            delete(instanceDirectory);
+            throw new MojoExecutionException(ex.getMessage(), ex);
+        }
+        LOG.info("Instance manifest of {} entries written in {} ms", paths.size(), System.currentTimeMillis() - start);
+    }
+
+    private static String line(Path root, Path path) {
+        File file = path.toFile();
+        try {
+            Long size = file.isDirectory() ? DIRECTORY_SIZE : file.length();
+            Long crc = file.isDirectory() ? 0L : FileUtils.checksumCRC32(file);
+            return String.join(SEPARATOR, relativePath(root, path), size.toString(), String.valueOf(file.lastModified()), crc.toString());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Brings an instance back to its manifest: <code>data/</code> is wiped
+     * while the rest of the tree is compared with the manifest, added files
+     * are deleted, a file with a different size is restored, a file with
+     * only a different mtime is restored if its checksum differs
+     *
+     * Symbolic links and the kept top level entries are left alone.
+     *
+     * @param instanceDirectory Instance of a previous run
+     * @param settingsHash Hash of the archive and of the extraction filters
+     * @param kept Top level entries not managed by the manifest, e.g. the
+     * shared system repository
+     * @return The relative paths of the files to restore from the archive,
+     * null if the instance has no manifest of the same settings or cannot be
+     * reset
+     */
+    public static Set<String> reset(File instanceDirectory, String settingsHash, String... kept) {
+        File manifestFile = file(instanceDirectory);
+        if (!instanceDirectory.isDirectory() || !manifestFile.exists()) {
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        Map<String, String[]> manifest = new LinkedHashMap<>();
+        try {
+            List<String> lines = FileUtils.readLines(manifestFile, "UTF-8");
+            if (lines.isEmpty() || !lines.get(0).equals(HEADER + settingsHash)) {
+                LOG.info("Instance manifest {} of other settings", manifestFile.getAbsolutePath());
+                return null;
+            }
+            for (String line : lines.subList(1, lines.size())) {
+                String[] fields = line.split(SEPARATOR);
+                manifest.put(fields[0], fields);
+            }
+        } catch (IOException ex) {
+            LOG.warn("Cannot read {}: {}", manifestFile.getAbsolutePath(), ex.getMessage());
+            return null;
+        }
+        Path root = instanceDirectory.toPath();
+        Path data = root.resolve(DATA_DIRECTORY_NAME);
+        Set<Path> keptPaths = new HashSet<>();
+        for (String name : kept) {
+            keptPaths.add(root.resolve(name));
+        }
+        CompletableFuture<Void> wipe = CompletableFuture.runAsync(() -> wipe(data));
+        Set<String> visited = new HashSet<>();
+        Map<String, File> changed = new TreeMap<>();
+        List<String> deleted = new ArrayList<>();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    if (dir.equals(root)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    if (dir.equals(data) || keptPaths.contains(dir)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    String relativePath = relativePath(root, dir);
+                    String[] entry = manifest.get(relativePath);
+                    if (entry == null || !DIRECTORY_SIZE.toString().equals(entry[1])) {
+                        FileUtils.deleteDirectory(dir.toFile());
+                        deleted.add(relativePath);
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    visited.add(relativePath);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (attrs.isSymbolicLink() || keptPaths.contains(file)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    String relativePath = relativePath(root, file);
+                    String[] entry = manifest.get(relativePath);
+                    if (entry == null || DIRECTORY_SIZE.toString().equals(entry[1])) {
+                        Files.delete(file);
+                        deleted.add(relativePath);
+                        return FileVisitResult.CONTINUE;
+                    }
+                    visited.add(relativePath);
+                    if (attrs.size() != Long.parseLong(entry[1])) {
+                        changed.put(relativePath, file.toFile());
+                    } else if (attrs.lastModifiedTime().toMillis() != Long.parseLong(entry[2])) {
+                        // Touched but possibly not modified, the checksum decides
+                        if (FileUtils.checksumCRC32(file.toFile()) == Long.parseLong(entry[3])) {
+                            file.toFile().setLastModified(Long.parseLong(entry[2]));
+                        } else {
+                            changed.put(relativePath, file.toFile());
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            wipe.join();
+        } catch (IOException | CompletionException ex) {
+            LOG.warn("Cannot reset {}, extract it again: {}", instanceDirectory.getAbsolutePath(), ex.getMessage());
+            wipe.handle((result, error) -> null).join();
+            delete(instanceDirectory);
+            return null;
+        }
+        Set<String> restore = new HashSet<>();
+        for (Map.Entry<String, String[]> entry : manifest.entrySet()) {
+            if (visited.contains(entry.getKey())) {
+                continue;
+            }
+            File file = new File(instanceDirectory, entry.getKey());
+            if (DIRECTORY_SIZE.toString().equals(entry.getValue()[1])) {
+                file.mkdirs();
+            } else {
+                restore.add(entry.getKey());
+            }
+        }
+        for (File file : changed.values()) {
+            file.delete();
+        }
+        restore.addAll(changed.keySet());
+        LOG.info("Instance reset in {} ms: {} entries deleted, {} files to restore", System.currentTimeMillis() - start, deleted.size(), restore.size());
+        LOG.debug("Deleted {}", deleted);
+        LOG.debug("Restore {}", restore);
+        return restore;
+    }
+
+    /**
+     * Deletes the content of a directory, one task per child
+     */
+    private static void wipe(Path directory) {
+        File[] children = directory.toFile().listFiles();
+        if (children != null) {
+            Arrays.asList(children).parallelStream().forEach(child -> {
+                if (!FileUtils.deleteQuietly(child)) {
+                    throw new UncheckedIOException(new IOException(String.format("Cannot delete %s", child.getAbsolutePath())));
+                }
+            });
+        }
+    }
+
+    private static String relativePath(Path root, Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.JMException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Samples the container platform MXBeans at a fixed interval through the
+ * container JMX connection, reading every MXBean with a single getAttributes
+ * call.
+ *
+ * @author giacomo
+ */
+public class JvmMetricsSampler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JvmMetricsSampler.class);
+    private static JvmMetricsSampler instance;
+
+    public static final String METRICS_FILE_NAME = "fuse-jvm-metrics.csv";
+    public static final String SUMMARY_FILE_NAME = "fuse-jvm-metrics-summary.txt";
+    private static final Long MB = 1024 * 1024L;
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    /**
+     * Starts sampling, unless a sampler is already running
+     *
+     * @param connection Container connection
+     * @param interval Sampling interval, in milliseconds
+     * @throws JMException
+     * @throws IOException
+     */
+    public static synchronized void start(MBeanServerConnection connection, Long interval) throws JMException, IOException {
+        if (instance == null) {
+            instance = new JvmMetricsSampler(connection);
+            instance.executor.scheduleAtFixedRate(instance::sample, 0, interval, TimeUnit.MILLISECONDS);
+            LOG.info("Sample container JVM metrics every {} ms", interval);
+        }
+    }
+
+    /**
+     * Stops sampling and writes the time series and the summary
+     *
+     * @param directory Output directory
+     */
+    public static synchronized void stop(File directory) {
+        if (instance != null) {
+            instance.executor.shutdownNow();
+            try {
+                instance.write(directory);
+            } catch (IOException ex) {
+                LOG.error(ex.getMessage(), ex);
+            }
+            instance = null;
+        }
+    }
+
+    private final MBeanServerConnection connection;
+    private final ScheduledExecutorService executor;
+    private final ObjectName memory;
+    private final ObjectName threading;
+    private final ObjectName classLoading;
+    private final ObjectName operatingSystem;
+    private final Set<ObjectName> garbageCollectors;
+    private final Set<ObjectName> memoryPools;
+    private final Set<String> columns = new LinkedHashSet<>();
+    private final List<Map<String, Double>> samples = new ArrayList<>();
+    // Cumulative GC counters of the previous sample, by GC
+    private final Map<String, Long[]> collections = new LinkedHashMap<>();
+
+    private JvmMetricsSampler(MBeanServerConnection connection) throws JMException, IOException {
+        this.connection = connection;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fuse-jvm-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        memory = new ObjectName("java.lang:type=Memory");
+        threading = new ObjectName("java.lang:type=Threading");
+        classLoading = new ObjectName("java.lang:type=ClassLoading");
+        operatingSystem = new ObjectName("java.lang:type=OperatingSystem");
+        garbageCollectors = connection.queryNames(new ObjectName("java.lang:type=GarbageCollector,*"), null);
+        memoryPools = connection.queryNames(new ObjectName("java.lang:type=MemoryPool,*"), null);
+    }
+
+    private void sample() {
+        try {
+            Map<String, Double> sample = new LinkedHashMap<>();
+            sample.put("timestamp", (double) System.currentTimeMillis());
+            for (Attribute attribute : attributes(memory, "HeapMemoryUsage", "NonHeapMemoryUsage")) {
+                CompositeData usage = (CompositeData) attribute.getValue();
+                sample.put(String.format("%s.used", attribute.getName()), ((Long) usage.get("used")).doubleValue());
+                sample.put(String.format("%s.committed", attribute.getName()), ((Long) usage.get("committed")).doubleValue());
+            }
+            put(sample, "", attributes(threading, "ThreadCount", "PeakThreadCount", "DaemonThreadCount"));
+            put(sample, "", attributes(classLoading, "LoadedClassCount"));
+            put(sample, "", attributes(operatingSystem, "ProcessCpuLoad", "SystemLoadAverage"));
+            for (ObjectName garbageCollector : garbageCollectors) {
+                collections(sample, garbageCollector.getKeyProperty("name"), attributes(garbageCollector, "CollectionCount", "CollectionTime"));
+            }
+            for (ObjectName memoryPool : memoryPools) {
+                for (Attribute attribute : attributes(memoryPool, "Usage")) {
+                    CompositeData usage = (CompositeData) attribute.getValue();
+                    if (usage != null) {
+                        sample.put(String.format("%s.used", memoryPool.getKeyProperty("name")), ((Long) usage.get("used")).doubleValue());
+                    }
+                }
+            }
+            synchronized (this) {
+                columns.addAll(sample.keySet());
+                samples.add(sample);
+            }
+        } catch (JMException | IOException | RuntimeException ex) {
+            // An exception would cancel the sampling
+            LOG.debug(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Puts the collections and the collection time of the interval: the GC
+     * counters are cumulative, so the first sample is only their baseline
+     */
+    private void collections(Map<String, Double> sample, String name, List<Attribute> attributes) {
+        Long[] counters = new Long[2];
+        for (Attribute attribute : attributes) {
+            if (attribute.getValue() instanceof Number) {
+                counters["CollectionCount".equals(attribute.getName()) ? 0 : 1] = ((Number) attribute.getValue()).longValue();
+            }
+        }
+        Long[] previous = collections.put(name, counters);
+        if (previous == null) {
+            return;
+        }
+        if (counters[0] != null && previous[0] != null) {
+            sample.put(String.format("%s.collections", name), (double) (counters[0] - previous[0]));
+        }
+        if (counters[1] != null && previous[1] != null) {
+            sample.put(String.format("%s.collectionTime", name), (double) (counters[1] - previous[1]));
+        }
+    }
+
+
+    private List<Attribute> attributes(ObjectName objectName, String... names) throws JMException, IOException {
+        AttributeList attributes = connection.getAttributes(objectName, names);
+        return attributes.asList();
+    }
+
+    private static void put(Map<String, Double> sample, String prefix, List<Attribute> attributes) {
+        for (Attribute attribute : attributes) {
+            if (attribute.getValue() instanceof Number) {
+                sample.put(String.format("%s%s", prefix, attribute.getName()), ((Number) attribute.getValue()).doubleValue());
+            }
+        }
+    }
+
+    private synchronized void write(File directory) throws IOException {
+        StringBuilder series = new StringBuilder(String.join(",", columns)).append('\n');
+        for (Map<String, Double> sample : samples) {
+            List<String> values = new ArrayList<>();
+            for (String column : columns) {
+                Double value = sample.get(column);
+                values.add(value == null ? "" : (value == Math.rint(value) ? String.valueOf(value.longValue()) : String.valueOf(value)));
+            }
+            series.append(String.join(",", values)).append('\n');
+        }
+        File metricsFile = new File(directory, METRICS_FILE_NAME);
+        FileUtils.write(metricsFile, series.toString(), "UTF-8");
+
+        StringBuilder summary = new StringBuilder(String.format("%d samples, memory in MB%n", samples.size()));
+        summary.append(String.format("%-40s %15s %15s %15s %15s %15s%n", "metric", "min", "p50", "p90", "p99", "max"));
+        for (String column : columns) {
+            if ("timestamp".equals(column)) {
+                continue;
+            }
+            List<Double> values = new ArrayList<>();
+            for (Map<String, Double> sample : samples) {
+                if (sample.get(column) != null) {
+                    values.add(sample.get(column));
+                }
+            }
+            if (values.isEmpty()) {
+                continue;
+            }
+            double scale = column.endsWith(".used") || column.endsWith(".committed") ? MB : 1;
+            summary.append(String.format("%-40s %15.2f", column, Statistics.min(values) / scale));
+            for (double percentile : PERCENTILES) {
+                summary.append(String.format(" %15.2f", Statistics.percentile(values, percentile) / scale));
+            }
+            summary.append(String.format(" %15.2f%n", Statistics.max(values) / scale));
+        }
+        File summaryFile = new File(directory, SUMMARY_FILE_NAME);
+        FileUtils.write(summaryFile, summary.toString(), "UTF-8");
+        LOG.info("Container JVM metrics written in {} and {}", metricsFile.getAbsolutePath(), summaryFile.getAbsolutePath());
+    }
+
+}
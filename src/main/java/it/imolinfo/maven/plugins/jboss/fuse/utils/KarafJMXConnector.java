@@ -21,10 +21,11 @@ import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import javax.management.InstanceNotFoundException;
 import javax.management.MBeanException;
@@ -36,9 +37,7 @@ import javax.management.ObjectName;
 import javax.management.ReflectionException;
 import javax.management.openmbean.CompositeDataSupport;
 import javax.management.openmbean.TabularDataSupport;
-import javax.management.remote.JMXConnector;
-import javax.management.remote.JMXConnectorFactory;
-import javax.management.remote.JMXServiceURL;
+import org.osgi.framework.BundleEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import static org.awaitility.Awaitility.await;
@@ -51,11 +50,38 @@ public class KarafJMXConnector {
 
     private static final Logger LOG = LoggerFactory.getLogger(KarafJMXConnector.class);
     private static KarafJMXConnector instance;
+    private static MBeanServerConnectionFactory connectionFactory = new RmiConnectionFactory();
 
     public static KarafJMXConnector getInstance(Long timeout) throws IOException, MalformedURLException, MalformedObjectNameException {
         return instance = (instance != null ? instance : new KarafJMXConnector(timeout));
     }
 
+    public static Boolean isConnected() {
+        return instance != null;
+    }
+
+    /**
+     * Sets how the next connection reaches the container
+     *
+     * @param factory Connection factory
+     */
+    public static synchronized void setConnectionFactory(MBeanServerConnectionFactory factory) {
+        connectionFactory = factory;
+    }
+
+    /**
+     * Closes the connection, so that the next container gets a new one
+     */
+    public static synchronized void close() {
+        try {
+            connectionFactory.close();
+        } catch (IOException ex) {
+            LOG.debug(ex.getMessage(), ex);
+        }
+        connectionFactory = new RmiConnectionFactory();
+        instance = null;
+    }
+
     private final Long timeout;
     private MBeanServerConnection connection;
     private ObjectName osgiFramework;
@@ -63,6 +89,7 @@ public class KarafJMXConnector {
     private ObjectName karafBundles;
     private ObjectName karafFeatures;
     private ObjectName karafSystem;
+    private final Set<Long> activeBundles = ConcurrentHashMap.newKeySet();
 
     private KarafJMXConnector(Long timeout) throws IOException, MalformedURLException, MalformedObjectNameException {
         this.timeout = timeout;
@@ -79,6 +106,13 @@ public class KarafJMXConnector {
                 new String[]{"java.lang.String"});
     }
 
+    public void uninstall(Long bundleId) throws InstanceNotFoundException, MBeanException, ReflectionException, IOException {
+        LOG.info("Uninstall bundle {}", bundleId);
+        connection.invoke(osgiFramework, "uninstallBundle",
+                new Object[]{bundleId},
+                new String[]{long.class.getName()});
+    }
+
     public void setStartLevel(Long bundleId, Integer startLevel) throws InstanceNotFoundException, MBeanException, ReflectionException, IOException {
         LOG.info("Set start level {} bundle {}", startLevel, bundleId);
         connection.invoke(osgiFramework, "setBundleStartLevel",
@@ -93,6 +127,17 @@ public class KarafJMXConnector {
                 new String[]{long.class.getName()});
     }
 
+    /**
+     * Checks the bundle state tracked through the bundle notifications,
+     * without a remote call
+     *
+     * @param bundleId Bundle id
+     * @return true if a STARTED event has been received for the bundle
+     */
+    public Boolean isActive(Long bundleId) {
+        return activeBundles.contains(bundleId);
+    }
+
     public List<Bundle> list() throws InstanceNotFoundException, MBeanException, ReflectionException, IOException {
         TabularDataSupport tabularDataSupport = (TabularDataSupport) connection.invoke(karafBundles, "list", null, null);
         List<Bundle> bundles = new ArrayList<>();
@@ -146,21 +191,23 @@ public class KarafJMXConnector {
                 new String[]{"java.lang.String"});
     }
 
+    public void addRepository(String repositoryUri) throws InstanceNotFoundException, MBeanException, ReflectionException, IOException {
+        LOG.info("Add features repository {}", repositoryUri);
+        connection.invoke(karafFeatures, "addRepository",
+                new Object[]{repositoryUri},
+                new String[]{"java.lang.String"});
+    }
+
     public void shutdown() throws InstanceNotFoundException, MBeanException, ReflectionException, IOException {
         connection.invoke(karafSystem, "shutdown", null, null);
     }
 
     private void init() throws MalformedURLException {
-        JMXServiceURL jmxUrl = new JMXServiceURL(
-                "service:jmx:rmi:///jndi/rmi://localhost:1099/karaf-root");
-        Map<String, ?> env = Collections.singletonMap(
-                javax.management.remote.JMXConnector.CREDENTIALS,
-                new String[]{"admin", "admin"});
         await().atMost(timeout, TimeUnit.MILLISECONDS).pollInterval(1, TimeUnit.SECONDS).until((Callable<Boolean>) () -> {
             try {
                 if (connection == null) {
-                    JMXConnector jmxConnector = JMXConnectorFactory.connect(jmxUrl, env);
-                    connection = jmxConnector.getMBeanServerConnection();
+                    connection = connectionFactory.connect();
+                    StackSampler.attach(connection);
                 }
                 karafBundles = new ObjectName("org.apache.karaf:type=bundles,name=root");
                 karafFeatures = new ObjectName("org.apache.karaf:type=features,name=root");
@@ -184,17 +231,46 @@ public class KarafJMXConnector {
         });
     }
 
+    private static String bundleEventType(Integer eventType) {
+        switch (eventType) {
+            case BundleEvent.INSTALLED:
+                return "INSTALLED";
+            case BundleEvent.STARTED:
+                return "STARTED";
+            case BundleEvent.STOPPED:
+                return "STOPPED";
+            case BundleEvent.UPDATED:
+                return "UPDATED";
+            case BundleEvent.UNINSTALLED:
+                return "UNINSTALLED";
+            case BundleEvent.RESOLVED:
+                return "RESOLVED";
+            case BundleEvent.UNRESOLVED:
+                return "UNRESOLVED";
+            case BundleEvent.STARTING:
+                return "STARTING";
+            case BundleEvent.STOPPING:
+                return "STOPPING";
+            default:
+                return String.valueOf(eventType);
+        }
+    }
+
     class OsgiBundleNotificationListener implements NotificationListener {
 
         @Override
         public void handleNotification(Notification notification, Object handback) {
             if (notification.getUserData() != null) {
                 CompositeDataSupport compositeDataSupport = (CompositeDataSupport) notification.getUserData();
-                LOG.info("{} {} {}: {}",
-                        compositeDataSupport.get("Identifier"),
-                        compositeDataSupport.get("SymbolicName"),
-                        compositeDataSupport.get("Location"),
-                        notification.getMessage());
+                Long bundleId = (Long) compositeDataSupport.get("Identifier");
+                Integer eventType = (Integer) compositeDataSupport.get("EventType");
+                if (eventType == BundleEvent.STARTED) {
+                    activeBundles.add(bundleId);
+                } else if (eventType == BundleEvent.STOPPED || eventType == BundleEvent.UNINSTALLED) {
+                    activeBundles.remove(bundleId);
+                }
+                EventJournal.publish("bundle", bundleId, compositeDataSupport.get("SymbolicName"), bundleEventType(eventType));
+                StackSampler.bundleEvent(compositeDataSupport.get("SymbolicName"), bundleEventType(eventType));
             }
         }
     }
@@ -205,11 +281,7 @@ public class KarafJMXConnector {
         public void handleNotification(Notification notification, Object handback) {
             if (notification.getUserData() != null) {
                 CompositeDataSupport compositeDataSupport = (CompositeDataSupport) notification.getUserData();
-                LOG.info("{}.{} {}: {}",
-                        compositeDataSupport.get("Name"),
-                        compositeDataSupport.get("Version"),
-                        compositeDataSupport.get("Type"),
-                        notification.getMessage());
+                EventJournal.publish("feature", compositeDataSupport.get("Name"), compositeDataSupport.get("Version"), compositeDataSupport.get("Type"));
             }
         }
     }
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.SystemUtils;
+import org.awaitility.core.ConditionTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Karaf JVM started directly, with the classpath and the system properties of
+ * bin/karaf, so that the plugin knows its pid and can wait for its exit.
+ *
+ * @author giacomo
+ */
+public class KarafProcess {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KarafProcess.class);
+
+    static final String MAIN_CLASS = "org.apache.karaf.main.Main";
+    private static final String OUTPUT_FILE_NAME = "karaf.out";
+    // RMI registry, RMI server, ssh and http ports of the default configuration
+    private static final Integer[] PORTS = {1099, 44444, 8101, 8181};
+    private static final Long KILL_TIMEOUT = 5000L;
+    private static final Long PORT_TIMEOUT = 10000L;
+
+    private static volatile Process process;
+    private static Long pid;
+    private static Thread shutdownHook;
+
+    private KarafProcess() {
+    }
+
+    /**
+     * Starts the Karaf JVM, unless it is already running
+     *
+     * @param home Karaf home
+     * @param jvmArgs JVM arguments
+     * @throws IOException
+     */
+    public static synchronized void start(File home, List<String> jvmArgs) throws IOException {
+        if (process != null && process.isAlive()) {
+            LOG.info("jboss-fuse JVM {} already running", pid);
+            return;
+        }
+        File karafHome = home.getAbsoluteFile();
+        File data = new File(karafHome, "data");
+        String javaHome = System.getenv("JAVA_HOME") != null ? System.getenv("JAVA_HOME") : System.getProperty("java.home");
+        List<String> command = new ArrayList<>();
+        command.add(new File(javaHome, SystemUtils.IS_OS_WINDOWS ? "bin/java.exe" : "bin/java").getPath());
+        command.add("-server");
+        command.addAll(jvmArgs);
+        command.add("-Dcom.sun.management.jmxremote");
+        // Endorsed and extension directories are gone since Java 9
+        if (new File(javaHome, "lib/rt.jar").exists() || new File(javaHome, "jre/lib/rt.jar").exists()) {
+            command.add(String.format("-Djava.endorsed.dirs=%s", path(javaHome, karafHome, "endorsed")));
+            command.add(String.format("-Djava.ext.dirs=%s", path(javaHome, karafHome, "ext")));
+        }
+        systemProperties(karafHome).forEach((key, value) -> command.add(String.format("-D%s=%s", key, value)));
+        List<String> classpath = new ArrayList<>();
+        for (File jar : classpath(karafHome)) {
+            classpath.add(jar.getPath());
+        }
+        command.add("-classpath");
+        command.add(String.join(File.pathSeparator, classpath));
+        command.add(MAIN_CLASS);
+        new File(data, "tmp").mkdirs();
+        LOG.debug("{}", command);
+        process = new ProcessBuilder(command)
+                .directory(karafHome)
+                .redirectErrorStream(true)
+                .redirectOutput(Redirect.appendTo(new File(data, OUTPUT_FILE_NAME)))
+                .start();
+        pid = pid(process);
+        LOG.info("jboss-fuse JVM started, pid {}", pid);
+        if (shutdownHook == null) {
+            // A failed build must not leak the container
+            shutdownHook = new Thread(KarafProcess::destroy, "jboss-fuse-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+    }
+
+    public static Boolean isStarted() {
+        return process != null;
+    }
+
+    public static Long getPid() {
+        return pid;
+    }
+
+    /**
+     * Waits for the JVM exit, then kills it once the timeout expires, and
+     * waits for its ports to be released
+     *
+     * @param timeout Time allowed for a clean exit, in milliseconds
+     * @throws InterruptedException
+     */
+    public static synchronized void stop(Long timeout) throws InterruptedException {
+        if (process == null) {
+            return;
+        }
+        Long startTime = System.currentTimeMillis();
+        if (!process.waitFor(timeout, TimeUnit.MILLISECONDS)) {
+            LOG.warn("jboss-fuse JVM {} still running after {} ms, terminate it", pid, timeout);
+            process.destroy();
+            if (!process.waitFor(KILL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                LOG.warn("jboss-fuse JVM {} still running, kill it", pid);
+                process.destroyForcibly().waitFor();
+            }
+        }
+        LOG.info("jboss-fuse JVM {} exited with {} in {} ms", pid, process.exitValue(), System.currentTimeMillis() - startTime);
+        process = null;
+        pid = null;
+        awaitPorts();
+    }
+
+    /**
+     * Waits until the container ports can be bound again
+     */
+    public static void awaitPorts() {
+        for (Integer port : PORTS) {
+            try {
+                await().atMost(PORT_TIMEOUT, TimeUnit.MILLISECONDS).pollInterval(100, TimeUnit.MILLISECONDS)
+                        .until((Callable<Boolean>) () -> isFree(port));
+            } catch (ConditionTimeoutException ex) {
+                LOG.warn("Port {} still in use", port);
+            }
+        }
+    }
+
+    private static void destroy() {
+        Process running = process;
+        if (running != null && running.isAlive()) {
+            LOG.warn("Kill jboss-fuse JVM {}", pid);
+            running.destroyForcibly();
+        }
+    }
+
+    private static Boolean isFree(Integer port) {
+        try (ServerSocket serverSocket = new ServerSocket()) {
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(new InetSocketAddress(port));
+            return Boolean.TRUE;
+        } catch (IOException ex) {
+            return Boolean.FALSE;
+        }
+    }
+
+    /**
+     * System properties set by bin/karaf for a server
+     *
+     * @param karafHome Karaf home
+     * @return The system properties
+     */
+    static Map<String, String> systemProperties(File karafHome) {
+        File data = new File(karafHome, "data");
+        File etc = new File(karafHome, "etc");
+        Map<String, String> systemProperties = new LinkedHashMap<>();
+        systemProperties.put("karaf.instances", new File(karafHome, "instances").getPath());
+        systemProperties.put("karaf.home", karafHome.getPath());
+        systemProperties.put("karaf.base", karafHome.getPath());
+        systemProperties.put("karaf.data", data.getPath());
+        systemProperties.put("karaf.etc", etc.getPath());
+        systemProperties.put("java.io.tmpdir", new File(data, "tmp").getPath());
+        systemProperties.put("java.util.logging.config.file", new File(etc, "java.util.logging.properties").getPath());
+        systemProperties.put("karaf.startLocalConsole", "false");
+        systemProperties.put("karaf.startRemoteShell", "true");
+        return systemProperties;
+    }
+
+    /**
+     * Classpath of bin/karaf: the lib/karaf*.jar files
+     *
+     * @param karafHome Karaf home
+     * @return The jars
+     * @throws IOException If there are no jars
+     */
+    static List<File> classpath(File karafHome) throws IOException {
+        File lib = new File(karafHome, "lib");
+        File[] jars = lib.listFiles((dir, name) -> name.startsWith("karaf") && name.endsWith(".jar"));
+        if (jars == null || jars.length == 0) {
+            throw new IOException(String.format("No karaf jar in %s", lib.getAbsolutePath()));
+        }
+        Arrays.sort(jars);
+        return Arrays.asList(jars);
+    }
+
+    private static String path(String javaHome, File karafHome, String directory) {
+        return String.join(File.pathSeparator,
+                new File(javaHome, String.format("jre/lib/%s", directory)).getPath(),
+                new File(javaHome, String.format("lib/%s", directory)).getPath(),
+                new File(karafHome, String.format("lib/%s", directory)).getPath());
+    }
+
+    private static Long pid(Process process) {
+        try {
+            // Process.pid() since Java 9, the pid field of UNIXProcess on Java 8
+            return (Long) Process.class.getMethod("pid").invoke(process);
+        } catch (ReflectiveOperationException ex) {
+            try {
+                Field field = process.getClass().getDeclaredField("pid");
+                field.setAccessible(true);
+                return field.getLong(process);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                LOG.debug(e.getMessage(), e);
+                return null;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServerConnection;
+
+/**
+ * Connection to a container embedded in the build JVM: Karaf registers its
+ * MBeans in the platform MBeanServer, which is called directly.
+ *
+ * @author giacomo
+ */
+public class PlatformConnectionFactory implements MBeanServerConnectionFactory {
+
+    @Override
+    public MBeanServerConnection connect() {
+        return ManagementFactory.getPlatformMBeanServer();
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
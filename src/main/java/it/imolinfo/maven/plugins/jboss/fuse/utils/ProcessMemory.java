@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import java.io.File;
+import java.io.IOException;
+import javax.management.JMException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resident memory of a local process, read from /proc on Linux.
+ *
+ * @author giacomo
+ */
+public class ProcessMemory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProcessMemory.class);
+
+    private static final Long KB = 1024L;
+
+    private ProcessMemory() {
+    }
+
+    /**
+     * The pid of the connected JVM, from the RuntimeMXBean name
+     * (<code>pid@host</code>)
+     *
+     * @param connection JVM connection
+     * @return The pid, or null if the name has another format
+     */
+    public static Long pid(MBeanServerConnection connection) {
+        try {
+            String name = (String) connection.getAttribute(new ObjectName("java.lang:type=Runtime"), "Name");
+            return Long.valueOf(name.substring(0, name.indexOf('@')));
+        } catch (JMException | IOException | RuntimeException ex) {
+            LOG.debug(ex.getMessage(), ex);
+            return null;
+        }
+    }
+
+    /**
+     * @param pid Process id
+     * @return Current resident set size, in bytes, or null if unknown
+     */
+    public static Long rss(Long pid) {
+        return status(pid, "VmRSS:");
+    }
+
+    /**
+     * @param pid Process id
+     * @return Peak resident set size, in bytes, or null if unknown
+     */
+    public static Long peakRss(Long pid) {
+        return status(pid, "VmHWM:");
+    }
+
+    private static Long status(Long pid, String field) {
+        if (pid == null) {
+            return null;
+        }
+        File status = new File(String.format("/proc/%d/status", pid));
+        if (!status.exists()) {
+            return null;
+        }
+        try {
+            for (String line : FileUtils.readLines(status, "UTF-8")) {
+                if (line.startsWith(field)) {
+                    return Long.parseLong(line.substring(field.length()).trim().split("\\s+")[0]) * KB;
+                }
+            }
+        } catch (IOException | NumberFormatException ex) {
+            LOG.debug(ex.getMessage(), ex);
+        }
+        return null;
+    }
+
+}
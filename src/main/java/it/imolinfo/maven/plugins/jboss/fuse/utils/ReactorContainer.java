@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.eclipse.aether.RepositorySystemSession;
+
+/**
+ * Container shared by the modules of a reactor build, registered in the
+ * session data with its launch mode and the bundles deployed by the last
+ * module. Only JDK types are stored, so that a module loading the plugin in
+ * another realm, where the connection of the first module is not visible,
+ * can still find the container and connect to it again through its JMX
+ * port. An embedded container lives in the realm that launched it and
+ * cannot be shared that way.
+ *
+ * The participants are the modules binding the shutdown goal with
+ * reactorMode; each one is marked as finished by its shutdown, and the last
+ * one stops the container whatever the build order. A container still
+ * registered at the end of the session, e.g. because a participant failed or
+ * was skipped, is stopped by the session end listener.
+ *
+ * @author giacomo
+ */
+public class ReactorContainer {
+
+    private static final String KEY = "it.imolinfo.maven.plugins.jboss.fuse.container";
+    private static final String FINISHED_KEY = "it.imolinfo.maven.plugins.jboss.fuse.container.finished";
+    private static final String LAUNCH_MODE = "launchMode";
+    private static final String BUNDLES = "bundles";
+    private static final String SHUTDOWN_GOAL = "shutdown";
+    private static final String REACTOR_MODE = "reactorMode";
+
+    private ReactorContainer() {
+    }
+
+    public static Boolean isRegistered(RepositorySystemSession session) {
+        return session.getData().get(KEY) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Set<Long> getBundles(RepositorySystemSession session) {
+        Object container = session.getData().get(KEY);
+        return container != null ? (Set<Long>) ((Map<String, Object>) container).get(BUNDLES) : Collections.<Long>emptySet();
+    }
+
+    /**
+     * @param session Repository session
+     * @return The launch mode name of the registered container, null if none
+     */
+    @SuppressWarnings("unchecked")
+    public static String getLaunchMode(RepositorySystemSession session) {
+        Object container = session.getData().get(KEY);
+        return container != null ? (String) ((Map<String, Object>) container).get(LAUNCH_MODE) : null;
+    }
+
+    public static void register(RepositorySystemSession session, String launchMode, Set<Long> bundles) {
+        Map<String, Object> container = new HashMap<>();
+        container.put(LAUNCH_MODE, launchMode);
+        container.put(BUNDLES, new HashSet<>(bundles));
+        session.getData().set(KEY, container);
+    }
+
+    public static void remove(RepositorySystemSession session) {
+        session.getData().set(KEY, null);
+        session.getData().set(FINISHED_KEY, null);
+    }
+
+    /**
+     * Stops the container still registered when the session ends, once per
+     * session
+     *
+     * @param request Execution request of the session
+     * @param session Repository session
+     * @param stop Stops the container
+     */
+    public static synchronized void stopOnSessionEnd(MavenExecutionRequest request, RepositorySystemSession session, Runnable stop) {
+        if (request.getExecutionListener() instanceof SessionEndListener) {
+            return;
+        }
+        ExecutionListener delegate = request.getExecutionListener();
+        request.setExecutionListener(new SessionEndListener(delegate, () -> {
+            if (isRegistered(session)) {
+                stop.run();
+                remove(session);
+            }
+        }));
+    }
+
+    /**
+     * Marks the shutdown of a participant
+     *
+     * @param session Repository session
+     * @param project Participant
+     */
+    @SuppressWarnings("unchecked")
+    public static void finish(RepositorySystemSession session, MavenProject project) {
+        Set<String> finished = ConcurrentHashMap.newKeySet();
+        // Several modules of a parallel build may finish at the same time
+        if (!session.getData().set(FINISHED_KEY, null, finished)) {
+            finished = (Set<String>) session.getData().get(FINISHED_KEY);
+        }
+        finished.add(project.getId());
+    }
+
+    /**
+     * Checks whether every other participant of the reactor has finished
+     *
+     * @param session Repository session
+     * @param projects Reactor projects
+     * @param project Current project
+     * @param pluginKey Plugin groupId:artifactId
+     * @param userProperties User properties, to resolve the reactorMode
+     * expressions
+     * @return true if the project is the last participant to finish
+     */
+    @SuppressWarnings("unchecked")
+    public static Boolean isLastParticipant(RepositorySystemSession session, List<MavenProject> projects, MavenProject project, String pluginKey, Properties userProperties) {
+        Object finished = session.getData().get(FINISHED_KEY);
+        for (MavenProject other : projects) {
+            if (other.getId().equals(project.getId()) || (finished != null && ((Set<String>) finished).contains(other.getId()))) {
+                continue;
+            }
+            if (isParticipant(other, pluginKey, userProperties)) {
+                return Boolean.FALSE;
+            }
+        }
+        return Boolean.TRUE;
+    }
+
+    /**
+     * Checks whether a project binds the shutdown goal with reactorMode
+     *
+     * @param project Project
+     * @param pluginKey Plugin groupId:artifactId
+     * @param userProperties User properties
+     * @return true if the project shares the container
+     */
+    static Boolean isParticipant(MavenProject project, String pluginKey, Properties userProperties) {
+        for (Plugin plugin : project.getBuildPlugins()) {
+            if (!pluginKey.equals(plugin.getKey())) {
+                continue;
+            }
+            for (PluginExecution execution : plugin.getExecutions()) {
+                if (!execution.getGoals().contains(SHUTDOWN_GOAL)) {
+                    continue;
+                }
+                String reactorMode = value((Xpp3Dom) execution.getConfiguration());
+                if (reactorMode == null) {
+                    reactorMode = value((Xpp3Dom) plugin.getConfiguration());
+                }
+                if (Boolean.parseBoolean(resolve(reactorMode, project, userProperties))) {
+                    return Boolean.TRUE;
+                }
+            }
+        }
+        return Boolean.FALSE;
+    }
+
+    private static String value(Xpp3Dom configuration) {
+        Xpp3Dom child = configuration != null ? configuration.getChild(REACTOR_MODE) : null;
+        return child != null ? child.getValue() : null;
+    }
+
+    /**
+     * Resolves a value made of a single property expression, from the user,
+     * project and system properties
+     */
+    private static String resolve(String value, MavenProject project, Properties userProperties) {
+        if (value == null || !value.trim().startsWith("${") || !value.trim().endsWith("}")) {
+            return value != null ? value.trim() : null;
+        }
+        String name = value.trim().substring(2, value.trim().length() - 1);
+        if (userProperties.containsKey(name)) {
+            return userProperties.getProperty(name);
+        }
+        if (project.getProperties().containsKey(name)) {
+            return project.getProperties().getProperty(name);
+        }
+        return System.getProperty(name);
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import javax.management.MBeanServerConnection;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+/**
+ * Connection to a container running in its own JVM, through the Karaf RMI
+ * connector.
+ *
+ * @author giacomo
+ */
+public class RmiConnectionFactory implements MBeanServerConnectionFactory {
+
+    private static final String URL = "service:jmx:rmi:///jndi/rmi://localhost:1099/karaf-root";
+    private static final String USER = "admin";
+    private static final String PASSWORD = "admin";
+
+    private JMXConnector jmxConnector;
+
+    @Override
+    public MBeanServerConnection connect() throws IOException {
+        Map<String, ?> env = Collections.singletonMap(JMXConnector.CREDENTIALS, new String[]{USER, PASSWORD});
+        jmxConnector = JMXConnectorFactory.connect(new JMXServiceURL(URL), env);
+        return jmxConnector.getMBeanServerConnection();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (jmxConnector != null) {
+            jmxConnector.close();
+            jmxConnector = null;
+        }
+    }
+
+}
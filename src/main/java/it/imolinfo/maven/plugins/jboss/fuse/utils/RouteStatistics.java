@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.management.Attribute;
+import javax.management.JMException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-route Camel statistics of the integration test phase: the route MBeans
+ * are read after start and before shutdown, one getAttributes call per route,
+ * and the report holds the difference.
+ *
+ * @author giacomo
+ */
+public class RouteStatistics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RouteStatistics.class);
+
+    public static final String REPORT_FILE_NAME = "fuse-camel-routes.txt";
+    private static final String ROUTES = "org.apache.camel:type=routes,*";
+    private static final String CAMEL_ID = "CamelId";
+    private static final String ROUTE_ID = "RouteId";
+    private static final String COMPLETED = "ExchangesCompleted";
+    private static final String FAILED = "ExchangesFailed";
+    private static final String TOTAL_PROCESSING_TIME = "TotalProcessingTime";
+    private static final String MIN_PROCESSING_TIME = "MinProcessingTime";
+    private static final String MAX_PROCESSING_TIME = "MaxProcessingTime";
+    private static final String[] ATTRIBUTES = {CAMEL_ID, ROUTE_ID, COMPLETED, FAILED, TOTAL_PROCESSING_TIME, MIN_PROCESSING_TIME, MAX_PROCESSING_TIME};
+    private static final String NOT_AVAILABLE = "-";
+
+    private static Map<String, Map<String, Object>> baseline;
+    private static Long baselineTime;
+
+    private RouteStatistics() {
+    }
+
+    /**
+     * Takes the baseline snapshot, unless there is one already
+     *
+     * @param connection Container connection
+     * @throws JMException
+     * @throws IOException
+     */
+    public static synchronized void start(MBeanServerConnection connection) throws JMException, IOException {
+        if (baseline == null) {
+            baseline = snapshot(connection);
+            baselineTime = System.currentTimeMillis();
+            LOG.info("Camel route statistics baseline: {} routes", baseline.size());
+        }
+    }
+
+    /**
+     * Takes the final snapshot and writes the difference with the baseline
+     *
+     * @param connection Container connection
+     * @param directory Output directory
+     */
+    public static synchronized void stop(MBeanServerConnection connection, File directory) {
+        if (baseline == null) {
+            return;
+        }
+        try {
+            Map<String, Map<String, Object>> current = snapshot(connection);
+            write(current, (System.currentTimeMillis() - baselineTime) / 1000.0, new File(directory, REPORT_FILE_NAME));
+        } catch (JMException | IOException ex) {
+            LOG.error(ex.getMessage(), ex);
+        } finally {
+            baseline = null;
+            baselineTime = null;
+        }
+    }
+
+    private static Map<String, Map<String, Object>> snapshot(MBeanServerConnection connection) throws JMException, IOException {
+        Map<String, Map<String, Object>> snapshot = new HashMap<>();
+        for (ObjectName route : connection.queryNames(new ObjectName(ROUTES), null)) {
+            Map<String, Object> values = new HashMap<>();
+            for (Attribute attribute : connection.getAttributes(route, ATTRIBUTES).asList()) {
+                values.put(attribute.getName(), attribute.getValue());
+            }
+            snapshot.put(route.getCanonicalName(), values);
+        }
+        return snapshot;
+    }
+
+    private static void write(Map<String, Map<String, Object>> current, Double seconds, File reportFile) throws IOException {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Object>> route : current.entrySet()) {
+            Map<String, Object> before = baseline.containsKey(route.getKey()) ? baseline.get(route.getKey()) : new HashMap<>();
+            Map<String, Object> after = route.getValue();
+            long completed = delta(after, before, COMPLETED);
+            long failed = delta(after, before, FAILED);
+            if (completed + failed == 0) {
+                continue;
+            }
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("route", String.format("%s/%s", after.get(CAMEL_ID), after.get(ROUTE_ID)));
+            row.put("completed", completed);
+            row.put("failed", failed);
+            row.put("throughput", completed / seconds);
+            row.put("mean", completed > 0 ? (double) delta(after, before, TOTAL_PROCESSING_TIME) / completed : 0.0);
+            // Min and max are kept since the route start, so they hold for the
+            // phase only if the route had no exchanges before it
+            Boolean idleBefore = number(before, COMPLETED) + number(before, FAILED) == 0;
+            row.put("min", idleBefore ? String.valueOf(number(after, MIN_PROCESSING_TIME)) : NOT_AVAILABLE);
+            row.put("max", idleBefore ? String.valueOf(number(after, MAX_PROCESSING_TIME)) : NOT_AVAILABLE);
+            rows.add(row);
+        }
+        // Slowest routes first
+        rows.sort((a, b) -> Double.compare((Double) b.get("mean"), (Double) a.get("mean")));
+        StringBuilder report = new StringBuilder(String.format("Camel routes, integration test phase of %.1f s%n", seconds));
+        report.append(String.format("%-60s %10s %8s %10s %12s %12s %12s%n", "route", "completed", "failed", "msg/s", "mean ms", "min ms", "max ms"));
+        for (Map<String, Object> row : rows) {
+            report.append(String.format("%-60s %10d %8d %10.1f %12.2f %12s %12s%n", row.get("route"), row.get("completed"), row.get("failed"),
+                    row.get("throughput"), row.get("mean"), row.get("min"), row.get("max")));
+        }
+        report.append(String.format("min and max only for the routes without exchanges before the phase%n"));
+
+        FileUtils.write(reportFile, report.toString(), "UTF-8");
+        LOG.info("\n{}", report);
+    }
+
+    private static long delta(Map<String, Object> after, Map<String, Object> before, String attribute) {
+        return number(after, attribute) - number(before, attribute);
+    }
+
+    private static long number(Map<String, Object> values, String attribute) {
+        Object value = values.get(attribute);
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+
+}
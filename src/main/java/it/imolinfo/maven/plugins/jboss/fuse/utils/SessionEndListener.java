@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Execution listener of the session, running a task once the session ends;
+ * every event is passed to the listener it replaces.
+ *
+ * @author giacomo
+ */
+class SessionEndListener implements ExecutionListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SessionEndListener.class);
+
+    private final ExecutionListener delegate;
+    private final Runnable task;
+
+    SessionEndListener(ExecutionListener delegate, Runnable task) {
+        this.delegate = delegate;
+        this.task = task;
+    }
+
+    @Override
+    public void sessionEnded(ExecutionEvent event) {
+        if (delegate != null) {
+            delegate.sessionEnded(event);
+        }
+        try {
+            task.run();
+        } catch (RuntimeException ex) {
+            LOG.error(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public void projectDiscoveryStarted(ExecutionEvent event) {
+        if (delegate != null) {
+            delegate.projectDiscoveryStarted(event);
+        }
+    }
+
+    @Override
+    public void sessionStarted(ExecutionEvent event) {
+        if (delegate != null) {
+            delegate.sessionStarted(event);
+        }
+    }
+
+    @Override
+    public void projectSkipped(ExecutionEvent event) {
+        if (delegate != null) {
+            delegate.projectSkipped(event);
+        }
+    }
+
+    @Override
+    public void projectStarted(ExecutionEvent event) {
+        if (delegate != null) {
+            delegate.projectStarted(event);
+        }
+    }
+
+    @Override
+    public void projectSucceeded(ExecutionEvent event) {
+        if (delegate != null) {
+            delegate.projectSucceeded(event);
+        }
+    }
+
+    @Override
+    public void projectFailed(ExecutionEvent event) {
+        if (delegate != null) {
+            delegate.projectFailed(event);
+        }
+    }
+
+    @Override
+    public void mojoSkipped(ExecutionEvent event) {
+        if (delegate != null) {
+            delegate.mojoSkipped(event);
+        }
+    }
+
+    @Override
+    public void mojoStarted(ExecutionEvent event) {
+        if (delegate != null) {
+            delegate.mojoStarted(event);
+        }
+    }
+
+    @Override
+    public void mojoSucceeded(ExecutionEvent event) {
+        if (delegate != null) {
+            delegate.mojoSucceeded(event);
+        }
+    }
+
+    @Override
+    public void mojoFailed(ExecutionEvent event) {
+        if (delegate != null) {
+            delegate.mojoFailed(event);
+        }
+    }
+
+    @Override
+    public void forkStarted(ExecutionEvent event) {
+        if (delegate != null) {
+            delegate.forkStarted(event);
+        }
+    }
+
+    @Override
+    public void forkSucceeded(ExecutionEvent event) {
+        if (delegate != null) {
+            delegate.forkSucceeded(event);
+        }
+    }
+
+    @Override
+    public void forkFailed(ExecutionEvent event) {
+        if (delegate != null) {
+            delegate.forkFailed(event);
+        }
+    }
+
+    @Override
+    public void forkedProjectStarted(ExecutionEvent event) {
+        if (delegate != null) {
+            delegate.forkedProjectStarted(event);
+        }
+    }
+
+    @Override
+    public void forkedProjectSucceeded(ExecutionEvent event) {
+        if (delegate != null) {
+            delegate.forkedProjectSucceeded(event);
+        }
+    }
+
+    @Override
+    public void forkedProjectFailed(ExecutionEvent event) {
+        if (delegate != null) {
+            delegate.forkedProjectFailed(event);
+        }
+    }
+
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServerConnection;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Samples the container thread stacks through the container JMX connection
+ * during start. Every sample is attributed to the phase of the goal (boot,
+ * feature or bundle being deployed) and to the bundle the container is
+ * starting, the samples are written as collapsed stacks, one
+ * <code>frame;frame;... count</code> per line, and the threads stuck on the
+ * same stack are reported as stalls.
+ *
+ * @author giacomo
+ */
+public class StackSampler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StackSampler.class);
+    private static StackSampler instance;
+
+    public static final String STACKS_FILE_NAME = "fuse-boot-stacks.collapsed";
+    public static final String STALLS_FILE_NAME = "fuse-boot-stalls.txt";
+    // A sample may take at most a tenth of the sampler time, slower dumps stretch the interval
+    private static final Integer OVERHEAD_FACTOR = 9;
+    private static final Integer STALL_FRAMES = 12;
+    // Frames a thread is always idle in, when they are the top frame
+    private static final String[] ACCEPT_FRAMES = {
+        "java.lang.ref.Reference.waitForReferencePendingList",
+        "sun.nio.ch.EPoll",
+        "sun.nio.ch.KQueue",
+        "sun.nio.ch.WindowsSelectorImpl",
+        "sun.nio.ch.Net.accept",
+        "sun.nio.ch.ServerSocketChannelImpl.accept",
+        "java.net.PlainSocketImpl.socketAccept",
+        "java.net.DualStackPlainSocketImpl.accept"
+    };
+    // Blocking primitives a thread may be idle in, when they are the top frame
+    private static final String[] WAIT_FRAMES = {
+        "sun.misc.Unsafe.park",
+        "jdk.internal.misc.Unsafe.park",
+        "java.lang.Object.wait",
+        "java.lang.Thread.sleep",
+        "java.net.SocketInputStream.socketRead",
+        "sun.nio.ch.Net.poll"
+    };
+    // Loops waiting for work, looked for right below a wait frame
+    private static final String[] IDLE_FRAMES = {
+        "java.util.concurrent.ThreadPoolExecutor.getTask",
+        "java.util.concurrent.ScheduledThreadPoolExecutor$DelayedWorkQueue.take",
+        "java.lang.ref.ReferenceQueue.remove",
+        "java.lang.ref.Reference$ReferenceHandler.run",
+        "java.util.TimerThread.mainLoop",
+        "org.apache.felix.framework.util.EventDispatcher.run",
+        "org.apache.felix.fileinstall.internal.DirectoryWatcher.run",
+        "sun.rmi.transport.tcp.TCPTransport.handleMessages"
+    };
+    private static final Integer IDLE_DEPTH = 10;
+    // The RMI thread serving the thread dump itself
+    private static final String SAMPLER_FRAME = "sun.management.ThreadImpl";
+
+    /**
+     * Arms the sampler, which starts with the first container connection
+     *
+     * @param interval Sampling interval, in milliseconds
+     * @param maxDepth Frames per stack
+     * @param stallThreshold Time on the same stack reported as a stall, in
+     * milliseconds
+     */
+    public static synchronized void start(Long interval, Integer maxDepth, Long stallThreshold) {
+        if (instance == null) {
+            instance = new StackSampler(interval, maxDepth, stallThreshold);
+        }
+    }
+
+    /**
+     * Starts sampling the connected container, if the sampler is armed
+     *
+     * @param connection Container connection
+     */
+    public static synchronized void attach(MBeanServerConnection connection) {
+        if (instance != null && instance.threading == null) {
+            try {
+                instance.threading = ManagementFactory.newPlatformMXBeanProxy(connection, ManagementFactory.THREAD_MXBEAN_NAME, ThreadMXBean.class);
+                instance.schedule(0L);
+                LOG.info("Sample container thread stacks every {} ms", instance.interval);
+            } catch (IOException ex) {
+                LOG.warn("Stack sampling not available: {}", ex.getMessage());
+                LOG.debug(ex.getMessage(), ex);
+            }
+        }
+    }
+
+    /**
+     * The phase of the goal the next samples belong to
+     *
+     * @param phase Phase, e.g. <code>bundle:name</code>
+     */
+    public static void context(String phase) {
+        StackSampler sampler = instance;
+        if (sampler != null) {
+            sampler.phase = phase;
+        }
+    }
+
+    /**
+     * Tracks the bundle the container is starting or has just started
+     *
+     * @param name Bundle symbolic name
+     * @param type Bundle event type
+     */
+    public static void bundleEvent(Object name, String type) {
+        StackSampler sampler = instance;
+        if (sampler == null || name == null) {
+            return;
+        }
+        // Blueprint and Spring contexts are created after the STARTED event, so the
+        // last started bundle is kept until the next one starts
+        if ("STARTING".equals(type) || "STARTED".equals(type)) {
+            sampler.bundle = String.format("%s:%s", type.toLowerCase(), name);
+        } else if (("STOPPED".equals(type) || "UNINSTALLED".equals(type)) && sampler.bundle != null && sampler.bundle.endsWith(String.format(":%s", name))) {
+            sampler.bundle = null;
+        }
+    }
+
+    /**
+     * Stops sampling and writes the collapsed stacks and the stalls
+     *
+     * @param directory Output directory
+     */
+    public static synchronized void stop(File directory) {
+        if (instance != null) {
+            instance.executor.shutdownNow();
+            try {
+                if (instance.threading != null) {
+                    instance.write(directory);
+                }
+            } catch (IOException ex) {
+                LOG.error(ex.getMessage(), ex);
+            }
+            instance = null;
+        }
+    }
+
+    private final Long interval;
+    private final Integer maxDepth;
+    private final Long stallThreshold;
+    private final ScheduledExecutorService executor;
+    private ThreadMXBean threading;
+    private volatile String phase = "boot";
+    private volatile String bundle;
+    private final Map<String, Long> stacks = new HashMap<>();
+    private final Map<Long, Stall> running = new HashMap<>();
+    private final List<Stall> stalls = new ArrayList<>();
+    private Long samples = 0L;
+    private Long sampleTime = 0L;
+    private Long averageTime = 0L;
+
+    private StackSampler(Long interval, Integer maxDepth, Long stallThreshold) {
+        this.interval = interval;
+        this.maxDepth = maxDepth;
+        this.stallThreshold = stallThreshold;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fuse-stack-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private void schedule(Long delay) {
+        executor.schedule(() -> {
+            long start = System.currentTimeMillis();
+            sample();
+            long elapsed = System.currentTimeMillis() - start;
+            // The first dump warms up both ends and is left out of the moving mean
+            if (samples > 1) {
+                averageTime = (3 * averageTime + elapsed) / 4;
+            }
+            if (!executor.isShutdown()) {
+                schedule(Math.max(interval - elapsed, averageTime * OVERHEAD_FACTOR));
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void sample() {
+        String context = bundle != null ? String.format("%s;%s", phase, bundle) : phase;
+        try {
+            long start = System.currentTimeMillis();
+            ThreadInfo[] threadInfos = threading.getThreadInfo(threading.getAllThreadIds(), maxDepth);
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                samples++;
+                sampleTime += now - start;
+                Map<Long, Stall> sampled = new HashMap<>();
+                for (ThreadInfo threadInfo : threadInfos) {
+                    if (threadInfo == null || threadInfo.getStackTrace().length == 0 || isIdle(threadInfo)) {
+                        continue;
+                    }
+                    String stack = collapse(threadInfo.getStackTrace());
+                    stacks.merge(String.format("%s;%s;%s", context, threadName(threadInfo), stack), 1L, Long::sum);
+                    Stall stall = running.get(threadInfo.getThreadId());
+                    if (stall == null || !stall.stack.equals(stack)) {
+                        if (stall != null) {
+                            end(stall);
+                        }
+                        stall = new Stall(threadInfo, stack, context, now);
+                    }
+                    stall.end = now;
+                    sampled.put(threadInfo.getThreadId(), stall);
+                }
+                for (Map.Entry<Long, Stall> stall : running.entrySet()) {
+                    if (!sampled.containsKey(stall.getKey())) {
+                        end(stall.getValue());
+                    }
+                }
+                running.clear();
+                running.putAll(sampled);
+            }
+        } catch (RuntimeException ex) {
+            LOG.debug(ex.getMessage(), ex);
+        }
+    }
+
+    private void end(Stall stall) {
+        if (stall.end - stall.start >= stallThreshold) {
+            stalls.add(stall);
+        }
+    }
+
+    /**
+     * A thread is idle when it blocks in an accept or a selector, or when it
+     * waits right below a loop waiting for work. Threads waiting anywhere
+     * else, e.g. an activator on a latch or an RMI call into the framework,
+     * are kept.
+     */
+    private static Boolean isIdle(ThreadInfo threadInfo) {
+        StackTraceElement[] stackTrace = threadInfo.getStackTrace();
+        String top = frame(stackTrace[0]);
+        if (top.startsWith(SAMPLER_FRAME) || startsWithAny(top, ACCEPT_FRAMES)) {
+            return Boolean.TRUE;
+        }
+        if (!startsWithAny(top, WAIT_FRAMES)) {
+            return Boolean.FALSE;
+        }
+        for (int i = 1; i < Math.min(stackTrace.length, IDLE_DEPTH); i++) {
+            if (startsWithAny(frame(stackTrace[i]), IDLE_FRAMES)) {
+                return Boolean.TRUE;
+            }
+        }
+        return Boolean.FALSE;
+    }
+
+    private static String frame(StackTraceElement frame) {
+        return String.format("%s.%s", frame.getClassName(), frame.getMethodName());
+    }
+
+    private static Boolean startsWithAny(String frame, String[] prefixes) {
+        for (String prefix : prefixes) {
+            if (frame.startsWith(prefix)) {
+                return Boolean.TRUE;
+            }
+        }
+        return Boolean.FALSE;
+    }
+
+    /**
+     * Thread name without numbers, so that the threads of a pool are merged
+     */
+    private static String threadName(ThreadInfo threadInfo) {
+        return threadInfo.getThreadName().replaceAll("\\d+", "N").replace(';', '_');
+    }
+
+    /**
+     * Frames from the outermost, without line numbers
+     */
+    private static String collapse(StackTraceElement[] stackTrace) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = stackTrace.length - 1; i >= 0; i--) {
+            sb.append(stackTrace[i].getClassName()).append('.').append(stackTrace[i].getMethodName());
+            if (i > 0) {
+                sb.append(';');
+            }
+        }
+        return sb.toString().replace(' ', '_');
+    }
+
+    private synchronized void write(File directory) throws IOException {
+        for (Stall stall : running.values()) {
+            end(stall);
+        }
+        StringBuilder collapsed = new StringBuilder();
+        stacks.forEach((stack, count) -> collapsed.append(stack).append(' ').append(count).append('\n'));
+        File stacksFile = new File(directory, STACKS_FILE_NAME);
+        FileUtils.write(stacksFile, collapsed.toString(), "UTF-8");
+
+        // Longest stalls first
+        stalls.sort((a, b) -> Long.compare(b.end - b.start, a.end - a.start));
+        StringBuilder report = new StringBuilder(String.format("%d samples, mean sample time %d ms, %d stalls of at least %d ms%n",
+                samples, samples > 0 ? sampleTime / samples : 0, stalls.size(), stallThreshold));
+        Map<String, Long> contexts = new LinkedHashMap<>();
+        for (Stall stall : stalls) {
+            contexts.merge(stall.context, stall.end - stall.start, Long::sum);
+        }
+        report.append(String.format("%n%-80s %12s%n", "context", "stalled ms"));
+        contexts.forEach((context, time) -> report.append(String.format("%-80s %12d%n", context, time)));
+        for (Stall stall : stalls) {
+            report.append(String.format("%n%d ms %s [%s] %s%s%n", stall.end - stall.start, stall.context, stall.state, stall.thread,
+                    stall.lock != null ? String.format(" on %s", stall.lock) : ""));
+            String[] frames = stall.stack.split(";");
+            for (int i = frames.length - 1; i >= Math.max(0, frames.length - STALL_FRAMES); i--) {
+                report.append("    at ").append(frames[i]).append('\n');
+            }
+        }
+        File stallsFile = new File(directory, STALLS_FILE_NAME);
+        FileUtils.write(stallsFile, report.toString(), "UTF-8");
+        LOG.info("Container thread stacks written in {} and {}", stacksFile.getAbsolutePath(), stallsFile.getAbsolutePath());
+    }
+
+    static class Stall {
+
+        private final String thread;
+        private final Thread.State state;
+        private final String lock;
+        private final String stack;
+        private final String context;
+        private final Long start;
+        private Long end;
+
+        Stall(ThreadInfo threadInfo, String stack, String context, Long start) {
+            this.thread = threadInfo.getThreadName();
+            this.state = threadInfo.getThreadState();
+            this.lock = threadInfo.getLockName();
+            this.stack = stack;
+            this.context = context;
+            this.start = start;
+            this.end = start;
+        }
+    }
+
+}
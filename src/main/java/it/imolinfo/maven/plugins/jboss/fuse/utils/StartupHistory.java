@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * History of the start phase timings, one run per line:
+ * <code>timestamp;phase=ms;phase=ms...</code>
+ *
+ * @author giacomo
+ */
+public class StartupHistory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StartupHistory.class);
+
+    private static final String SEPARATOR = ";";
+    private static final Integer MIN_BASELINE_RUNS = 3;
+
+    private StartupHistory() {
+    }
+
+    public static List<Map<String, Long>> load(File historyFile) throws IOException {
+        List<Map<String, Long>> history = new ArrayList<>();
+        if (historyFile.exists()) {
+            for (String line : FileUtils.readLines(historyFile, "UTF-8")) {
+                String[] fields = line.split(SEPARATOR);
+                Map<String, Long> timings = new LinkedHashMap<>();
+                for (int i = 1; i < fields.length; i++) {
+                    int separator = fields[i].lastIndexOf('=');
+                    if (separator > 0) {
+                        timings.put(fields[i].substring(0, separator), Long.parseLong(fields[i].substring(separator + 1)));
+                    }
+                }
+                history.add(timings);
+            }
+        }
+        return history;
+    }
+
+    public static void append(File historyFile, Map<String, Long> timings) throws IOException {
+        StringBuilder sb = new StringBuilder(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(new Date()));
+        timings.forEach((phase, time) -> sb.append(SEPARATOR).append(phase.replaceAll("[\\s;=]", "_")).append('=').append(time));
+        FileUtils.writeLines(historyFile, "UTF-8", Collections.singletonList(sb.toString()), true);
+    }
+
+    /**
+     * Compares each phase with the median of the same phase in the last runs
+     *
+     * @param history Previous runs, oldest first
+     * @param timings Current run
+     * @param window Number of previous runs in the baseline
+     * @param threshold Allowed slowdown, in percent of the baseline
+     * @param minDelta Allowed slowdown, in milliseconds, regardless of the
+     * threshold
+     * @return The regressed phases
+     */
+    public static List<String> regressions(List<Map<String, Long>> history, Map<String, Long> timings, Integer window, Double threshold, Long minDelta) {
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Long> phase : timings.entrySet()) {
+            String name = phase.getKey().replaceAll("[\\s;=]", "_");
+            List<Long> baselineRuns = new ArrayList<>();
+            for (int i = history.size() - 1; i >= 0 && baselineRuns.size() < window; i--) {
+                if (history.get(i).containsKey(name)) {
+                    baselineRuns.add(history.get(i).get(name));
+                }
+            }
+            if (baselineRuns.size() < MIN_BASELINE_RUNS) {
+                continue;
+            }
+            Double baseline = Statistics.median(baselineRuns);
+            Long delta = phase.getValue() - baseline.longValue();
+            LOG.debug("{}: {} ms, baseline {} ms", name, phase.getValue(), baseline.longValue());
+            if (delta > minDelta && delta > baseline * threshold / 100) {
+                regressions.add(String.format("%s: %d ms, baseline %d ms (+%.0f%%)", name, phase.getValue(), baseline.longValue(), 100 * delta / baseline));
+            }
+        }
+        return regressions;
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *
+ * @author giacomo
+ */
+public class Statistics {
+
+    private Statistics() {
+    }
+
+    /**
+     * Nearest-rank percentile
+     *
+     * @param values Values
+     * @param percentile Percentile, between 0 and 100
+     * @return The percentile, or null if there are no values
+     */
+    public static Double percentile(Collection<? extends Number> values, double percentile) {
+        if (values.isEmpty()) {
+            return null;
+        }
+        List<Double> sorted = new ArrayList<>();
+        for (Number value : values) {
+            sorted.add(value.doubleValue());
+        }
+        Collections.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * sorted.size());
+        return sorted.get(Math.min(Math.max(rank, 1), sorted.size()) - 1);
+    }
+
+    public static Double median(Collection<? extends Number> values) {
+        return percentile(values, 50);
+    }
+
+    public static Double min(Collection<? extends Number> values) {
+        return percentile(values, 0);
+    }
+
+    public static Double max(Collection<? extends Number> values) {
+        return percentile(values, 100);
+    }
+
+}
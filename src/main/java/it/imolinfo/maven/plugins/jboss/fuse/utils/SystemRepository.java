@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.TrueFileFilter;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Manages the system/ Maven repository of the distribution extracted once in
+ * a shared, read-only directory and linked by every instance.
+ *
+ * @author giacomo
+ */
+public class SystemRepository {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SystemRepository.class);
+
+    public static final String SYSTEM_DIRECTORY_NAME = "system";
+    private static final String PAX_URL_MVN_CFG = "etc/org.ops4j.pax.url.mvn.cfg";
+    private static final Pattern DEFAULT_REPOSITORY_PATTERN = Pattern.compile("file:\\$\\{[a-z.]+\\}/\\$\\{karaf\\.default\\.repository\\}");
+
+    private SystemRepository() {
+    }
+
+    /**
+     * Extracts the system/ directory of the archive in the shared directory,
+     * unless a previous build already did it
+     *
+     * @param archive Distribution archive
+     * @param sharedDirectory Shared directory
+     * @param directoryName Root directory name of the archive
+     * @return The shared system/ directory
+     * @throws MojoExecutionException
+     */
+    public static File extract(File archive, File sharedDirectory, String directoryName) throws MojoExecutionException {
+        File systemDirectory = new File(sharedDirectory, String.format("%s/%s", directoryName, SYSTEM_DIRECTORY_NAME));
+        if (systemDirectory.isDirectory()) {
+            LOG.info("Use shared system repository {}", systemDirectory.getAbsolutePath());
+            return systemDirectory;
+        }
+        // Extract in a private directory and publish it with an atomic rename, so concurrent builds never see a partial repository
+        File tmpDirectory = new File(sharedDirectory, String.format(".%s-%s", directoryName, UUID.randomUUID()));
+        try {
+            LOG.info("Extract shared system repository in {}", systemDirectory.getAbsolutePath());
+            ArchiveManager.extract(archive.getAbsolutePath(), tmpDirectory.getAbsolutePath(),
+                    new String[]{String.format("*/%s/**", SYSTEM_DIRECTORY_NAME)}, null);
+            File extracted = new File(tmpDirectory, String.format("%s/%s", directoryName, SYSTEM_DIRECTORY_NAME));
+            setReadOnly(extracted);
+            systemDirectory.getParentFile().mkdirs();
+            Files.move(extracted.toPath(), systemDirectory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException ex) {
+            LOG.info("Shared system repository extracted by another build");
+        } catch (IOException ex) {
+            if (!systemDirectory.isDirectory()) {
+                throw new MojoExecutionException(ex.getMessage(), ex);
+            }
+        } finally {
+            delete(tmpDirectory);
+        }
+        return systemDirectory;
+    }
+
+    /**
+     * Replaces the system/ directory of the instance with a link to the shared
+     * one and points the Pax URL default repositories to it
+     *
+     * @param instanceDirectory Instance directory
+     * @param systemDirectory Shared system/ directory
+     * @throws MojoExecutionException
+     */
+    public static void link(File instanceDirectory, File systemDirectory) throws MojoExecutionException {
+        File instanceSystemDirectory = new File(instanceDirectory, SYSTEM_DIRECTORY_NAME);
+        try {
+            if (Files.isSymbolicLink(instanceSystemDirectory.toPath())) {
+                Files.delete(instanceSystemDirectory.toPath());
+            } else if (instanceSystemDirectory.exists()) {
+                FileUtils.deleteDirectory(instanceSystemDirectory);
+            }
+            Files.createSymbolicLink(instanceSystemDirectory.toPath(), systemDirectory.getAbsoluteFile().toPath());
+        } catch (IOException | UnsupportedOperationException ex) {
+            LOG.warn("Cannot link {}, copying it: {}", systemDirectory.getAbsolutePath(), ex.getMessage());
+            try {
+                FileUtils.copyDirectory(systemDirectory, instanceSystemDirectory);
+            } catch (IOException e) {
+                throw new MojoExecutionException(e.getMessage(), e);
+            }
+            return;
+        }
+        File paxUrlMvnCfg = new File(instanceDirectory, PAX_URL_MVN_CFG);
+        if (paxUrlMvnCfg.exists()) {
+            try {
+                String text = FileUtils.readFileToString(paxUrlMvnCfg, "UTF-8");
+                Matcher matcher = DEFAULT_REPOSITORY_PATTERN.matcher(text);
+                String systemUri = systemDirectory.getAbsoluteFile().toURI().toString();
+                FileUtils.write(paxUrlMvnCfg, matcher.replaceAll(Matcher.quoteReplacement(systemUri.substring(0, systemUri.length() - 1))), "UTF-8");
+            } catch (IOException ex) {
+                throw new MojoExecutionException(ex.getMessage(), ex);
+            }
+        }
+        LOG.info("Link {} to {}", instanceSystemDirectory.getAbsolutePath(), systemDirectory.getAbsolutePath());
+    }
+
+    private static void setReadOnly(File directory) {
+        for (File file : FileUtils.listFiles(directory, null, true)) {
+            file.setWritable(false);
+        }
+    }
+
+    /**
+     * Deletes a directory, read-only files included
+     *
+     * @param directory Directory
+     */
+    public static void delete(File directory) {
+
+        if (directory.exists()) {
+            for (File file : FileUtils.listFilesAndDirs(directory, TrueFileFilter.TRUE, TrueFileFilter.TRUE)) {
+                file.setWritable(true);
+            }
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import it.imolinfo.maven.plugins.jboss.fuse.options.BootProfile;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ * @author giacomo
+ */
+public class BootProfilesTest {
+
+    private static final String FEATURES_CFG = String.join("\n",
+            "# Comma separated list of features repositories",
+            "featuresRepositories=mvn:org.apache.karaf.assemblies.features/standard/2.4.0/xml/features",
+            "",
+            "# featuresBoot=commented",
+            "featuresBoot=jasypt-encryption,config,management,fabric-boot-commands,\\",
+            "    fabric-bundle,fabric-maven-proxy,patch,\\",
+            "    camel",
+            "",
+            "featuresBootAsynchronous=false",
+            "");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File etc;
+    private File featuresCfg;
+
+    @Before
+    public void etc() throws Exception {
+        etc = temporaryFolder.newFolder("etc");
+        featuresCfg = new File(etc, BootProfiles.FEATURES_CFG_FILE_NAME);
+        FileUtils.write(featuresCfg, FEATURES_CFG, "UTF-8");
+    }
+
+    @Test
+    public void minimalProfileReplacesContinuationLines() throws Exception {
+        BootProfiles.apply(etc, BootProfile.MINIMAL, Arrays.asList("camel-core", "config"));
+        assertEquals(Arrays.asList(
+                "# Comma separated list of features repositories",
+                "featuresRepositories=mvn:org.apache.karaf.assemblies.features/standard/2.4.0/xml/features",
+                "",
+                "# featuresBoot=commented",
+                "featuresBoot=config,management,kar,deployer,camel-core",
+                "",
+                "featuresBootAsynchronous=false"),
+                FileUtils.readLines(featuresCfg, "UTF-8"));
+    }
+
+    @Test
+    public void singleLineFeaturesBootIsReplaced() throws Exception {
+        FileUtils.write(featuresCfg, "featuresBoot = config\nfeaturesRepositories=\n", "UTF-8");
+        BootProfiles.apply(etc, BootProfile.MINIMAL, Collections.emptyList());
+        assertEquals(Arrays.asList("featuresBoot=config,management,kar,deployer", "featuresRepositories="),
+                FileUtils.readLines(featuresCfg, "UTF-8"));
+    }
+
+    @Test
+    public void stockProfileLeavesTheFileUntouched() throws Exception {
+        BootProfiles.apply(etc, BootProfile.STOCK, Arrays.asList("camel-core"));
+        assertEquals(FEATURES_CFG, FileUtils.readFileToString(featuresCfg, "UTF-8"));
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import it.imolinfo.maven.plugins.jboss.fuse.model.BundleFile;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ *
+ * @author giacomo
+ */
+public class DeploymentPlanTest {
+
+    private static final Long MTIME = 1500000000000L;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File lockFile;
+    private File first;
+    private File second;
+    private String inputsHash;
+    private Map<String, List<BundleFile>> plan;
+
+    @Before
+    public void plan() throws Exception {
+        lockFile = new File(temporaryFolder.getRoot(), "plan/deployment-plan.properties");
+        first = temporaryFolder.newFile("first.jar");
+        second = temporaryFolder.newFile("second.jar");
+        FileUtils.write(first, "first", "UTF-8");
+        FileUtils.write(second, "second", "UTF-8");
+        inputsHash = DeploymentPlan.inputsHash("it.imolinfo:first:1.0", "it.imolinfo:second:1.0");
+        plan = new LinkedHashMap<>();
+        plan.put("bundles", Arrays.asList(new BundleFile(second, 80), new BundleFile(first, null)));
+        plan.put("bundlesPostDeploy", Collections.emptyList());
+        DeploymentPlan.write(lockFile, inputsHash, plan);
+    }
+
+    @Test
+    public void planIsLoadedInOrder() throws Exception {
+        Map<String, List<BundleFile>> loaded = DeploymentPlan.load(lockFile, inputsHash);
+        assertEquals(Arrays.asList("bundles", "bundlesPostDeploy"), Arrays.asList(loaded.keySet().toArray()));
+        List<BundleFile> bundles = loaded.get("bundles");
+        assertEquals(2, bundles.size());
+        assertEquals(second.getAbsoluteFile(), bundles.get(0).getFile());
+        assertEquals(Integer.valueOf(80), bundles.get(0).getStartLevel());
+        assertEquals(first.getAbsoluteFile(), bundles.get(1).getFile());
+        assertNull(bundles.get(1).getStartLevel());
+        assertEquals(Collections.emptyList(), loaded.get("bundlesPostDeploy"));
+    }
+
+    @Test
+    public void inputsHashDependsOnTheInputs() {
+        assertEquals(inputsHash, DeploymentPlan.inputsHash("it.imolinfo:first:1.0", "it.imolinfo:second:1.0"));
+        assertNotEquals(inputsHash, DeploymentPlan.inputsHash("it.imolinfo:first:1.0", "it.imolinfo:second:1.1"));
+    }
+
+    @Test
+    public void staleInputsAreNotLoaded() throws Exception {
+        assertNull(DeploymentPlan.load(lockFile, DeploymentPlan.inputsHash("it.imolinfo:first:1.1")));
+    }
+
+    @Test
+    public void missingLockFileIsNotLoaded() throws Exception {
+        assertNull(DeploymentPlan.load(new File(temporaryFolder.getRoot(), "missing.properties"), inputsHash));
+    }
+
+    @Test
+    public void changedFileIsNotLoaded() throws Exception {
+        FileUtils.write(first, "first rebuilt", "UTF-8");
+        assertNull(DeploymentPlan.load(lockFile, inputsHash));
+    }
+
+    @Test
+    public void touchedFileIsNotLoaded() throws Exception {
+        first.setLastModified(MTIME);
+        assertNull(DeploymentPlan.load(lockFile, inputsHash));
+    }
+
+    @Test
+    public void deletedFileIsNotLoaded() throws Exception {
+        FileUtils.forceDelete(second);
+        assertNull(DeploymentPlan.load(lockFile, inputsHash));
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import it.imolinfo.maven.plugins.jboss.fuse.AbstractGoal;
+import it.imolinfo.maven.plugins.jboss.fuse.model.BundleFile;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author giacomo
+ */
+public class FeaturesGeneratorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void specialCharactersAreEscaped() throws Exception {
+        File bundle = new File(temporaryFolder.newFolder("R&D <bundles>"), "it's \"quoted\".jar");
+        File featuresFile = temporaryFolder.newFile("features.xml");
+        FeaturesGenerator.generate(featuresFile, "test&<feature>", Arrays.asList("camel-core", "a&b"),
+                Arrays.asList(new BundleFile(bundle, 80), new BundleFile(bundle, null)));
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(featuresFile);
+        Element root = document.getDocumentElement();
+        assertEquals("test&<feature>-repository", root.getAttribute("name"));
+        Element feature = (Element) root.getElementsByTagName("feature").item(0);
+        assertEquals("test&<feature>", feature.getAttribute("name"));
+        NodeList dependencies = feature.getElementsByTagName("feature");
+        assertEquals(2, dependencies.getLength());
+        assertEquals("a&b", dependencies.item(1).getTextContent());
+        NodeList bundles = feature.getElementsByTagName("bundle");
+        assertEquals(2, bundles.getLength());
+        assertEquals("80", ((Element) bundles.item(0)).getAttribute("start-level"));
+        assertEquals(AbstractGoal.FILE_PREFIX + bundle.getAbsolutePath(), bundles.item(0).getTextContent());
+        assertEquals("", ((Element) bundles.item(1)).getAttribute("start-level"));
+    }
+
+    @Test
+    public void emptyFeatureIsWellFormed() throws Exception {
+        File featuresFile = temporaryFolder.newFile("features.xml");
+        FeaturesGenerator.generate(featuresFile, "empty", Collections.emptyList(), Collections.emptyList());
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(featuresFile);
+        assertEquals(1, document.getElementsByTagName("feature").getLength());
+        assertTrue(FileUtils.readFileToString(featuresFile, "UTF-8").startsWith("<?xml"));
+    }
+
+}
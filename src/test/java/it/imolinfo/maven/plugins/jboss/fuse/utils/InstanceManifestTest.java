@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author giacomo
+ */
+public class InstanceManifestTest {
+
+    private static final String SETTINGS = "settings";
+    private static final Long MTIME = 1500000000000L;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File instance;
+
+    @Before
+    public void extract() throws Exception {
+        instance = temporaryFolder.newFolder("jboss-fuse");
+        file("bin/start", "start");
+        file("etc/config.properties", "config");
+        file("etc/users.properties", "users");
+        file("lib/karaf.jar", "karaf");
+        file("data/cache/bundle.jar", "bundle");
+        new File(instance, "deploy").mkdirs();
+        InstanceManifest.write(instance, SETTINGS);
+    }
+
+    @Test
+    public void unchangedInstanceRestoresOnlyData() {
+        Set<String> restore = InstanceManifest.reset(instance, SETTINGS);
+        assertEquals(Collections.singleton("data/cache/bundle.jar"), restore);
+        assertTrue(new File(instance, "data/cache").isDirectory());
+        assertFalse(new File(instance, "data/cache/bundle.jar").exists());
+    }
+
+    @Test
+    public void addedEntriesAreDeleted() throws Exception {
+        file("deploy/test.jar", "test");
+        file("etc/added/added.cfg", "added");
+        file("data/log/fuse.log", "log");
+        Set<String> restore = InstanceManifest.reset(instance, SETTINGS);
+        assertFalse(new File(instance, "deploy/test.jar").exists());
+        assertFalse(new File(instance, "etc/added").exists());
+        assertFalse(new File(instance, "data/log").exists());
+        assertTrue(new File(instance, "deploy").isDirectory());
+        assertEquals(Collections.singleton("data/cache/bundle.jar"), restore);
+    }
+
+    @Test
+    public void modifiedFilesAreRestored() throws Exception {
+        // Different size
+        FileUtils.write(new File(instance, "etc/config.properties"), "config\nkaraf.framework=equinox\n", "UTF-8");
+        // Same size, different content and mtime
+        FileUtils.write(new File(instance, "etc/users.properties"), "USERS", "UTF-8");
+        new File(instance, "etc/users.properties").setLastModified(MTIME);
+        Set<String> restore = InstanceManifest.reset(instance, SETTINGS);
+        assertEquals(new HashSet<>(Arrays.asList("etc/config.properties", "etc/users.properties", "data/cache/bundle.jar")), restore);
+        assertFalse(new File(instance, "etc/config.properties").exists());
+        assertFalse(new File(instance, "etc/users.properties").exists());
+    }
+
+    @Test
+    public void touchedFileWithSameChecksumIsKept() throws Exception {
+        File start = new File(instance, "bin/start");
+        long mtime = start.lastModified();
+        FileUtils.write(start, "start", "UTF-8");
+        start.setLastModified(MTIME);
+        Set<String> restore = InstanceManifest.reset(instance, SETTINGS);
+        assertFalse(restore.contains("bin/start"));
+        assertEquals("start", FileUtils.readFileToString(start, "UTF-8"));
+        assertEquals(mtime, start.lastModified());
+    }
+
+    @Test
+    public void deletedEntriesAreRestored() throws Exception {
+        FileUtils.forceDelete(new File(instance, "lib"));
+        FileUtils.forceDelete(new File(instance, "deploy"));
+        Set<String> restore = InstanceManifest.reset(instance, SETTINGS);
+        assertTrue(restore.contains("lib/karaf.jar"));
+        assertTrue(new File(instance, "lib").isDirectory());
+        assertTrue(new File(instance, "deploy").isDirectory());
+    }
+
+    @Test
+    public void symbolicLinkIsLeftAlone() throws Exception {
+        File shared = temporaryFolder.newFolder("shared");
+        FileUtils.write(new File(shared, "repository.jar"), "repository", "UTF-8");
+        try {
+            Files.createSymbolicLink(new File(instance, "system").toPath(), shared.toPath());
+        } catch (IOException | UnsupportedOperationException ex) {
+            Assume.assumeNoException(ex);
+        }
+        InstanceManifest.reset(instance, SETTINGS);
+        assertTrue(Files.isSymbolicLink(new File(instance, "system").toPath()));
+        assertTrue(new File(shared, "repository.jar").exists());
+    }
+
+    @Test
+    public void keptEntryIsLeftAlone() throws Exception {
+        file("system/org/repository.jar", "repository");
+        InstanceManifest.reset(instance, SETTINGS, "system");
+        assertTrue(new File(instance, "system/org/repository.jar").exists());
+    }
+
+    @Test
+    public void manifestOfOtherSettingsIsNotUsed() throws Exception {
+        file("deploy/test.jar", "test");
+        assertNull(InstanceManifest.reset(instance, "other"));
+        assertTrue(new File(instance, "deploy/test.jar").exists());
+    }
+
+    @Test
+    public void instanceWithoutManifestIsNotReset() {
+        InstanceManifest.delete(instance);
+        assertNull(InstanceManifest.reset(instance, SETTINGS));
+    }
+
+    private void file(String path, String content) throws IOException {
+        FileUtils.write(new File(instance, path), content, "UTF-8");
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import it.imolinfo.maven.plugins.jboss.fuse.options.LaunchMode;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.maven.execution.AbstractExecutionListener;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystemSession;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author giacomo
+ */
+public class ReactorContainerTest {
+
+    private static final String PLUGIN_KEY = "it.imolinfo.maven.plugins:jboss-fuse-maven-plugin";
+
+    private final RepositorySystemSession session = new DefaultRepositorySystemSession();
+    private final Properties userProperties = new Properties();
+
+    private final MavenProject parent = project("parent");
+    private final MavenProject first = project("first", execution("true", "start", "shutdown"));
+    private final MavenProject library = project("library");
+    private final MavenProject second = project("second", execution("true", "start", "shutdown"));
+    private final MavenProject load = project("load", execution("true", "load"));
+    private final MavenProject standalone = project("standalone", execution("false", "start", "shutdown"));
+    private final MavenProject distribution = project("distribution");
+
+    @Test
+    public void lastParticipantToFinishIsLastParticipant() {
+        List<MavenProject> projects = Arrays.asList(parent, first, library, second, load, standalone, distribution);
+        ReactorContainer.finish(session, first);
+        assertFalse(ReactorContainer.isLastParticipant(session, projects, first, PLUGIN_KEY, userProperties));
+        ReactorContainer.finish(session, second);
+        assertTrue(ReactorContainer.isLastParticipant(session, projects, second, PLUGIN_KEY, userProperties));
+    }
+
+    @Test
+    public void buildOrderDoesNotMatter() {
+        // A parallel build may finish the second module first
+        List<MavenProject> projects = Arrays.asList(parent, first, second);
+        ReactorContainer.finish(session, second);
+        assertFalse(ReactorContainer.isLastParticipant(session, projects, second, PLUGIN_KEY, userProperties));
+        ReactorContainer.finish(session, first);
+        assertTrue(ReactorContainer.isLastParticipant(session, projects, first, PLUGIN_KEY, userProperties));
+    }
+
+    @Test
+    public void singleProjectIsLastParticipant() {
+        assertTrue(ReactorContainer.isLastParticipant(session, Collections.singletonList(first), first, PLUGIN_KEY, userProperties));
+    }
+
+    @Test
+    public void onlyShutdownInReactorModeParticipates() {
+        assertTrue(ReactorContainer.isParticipant(first, PLUGIN_KEY, userProperties));
+        assertFalse(ReactorContainer.isParticipant(library, PLUGIN_KEY, userProperties));
+        assertFalse(ReactorContainer.isParticipant(load, PLUGIN_KEY, userProperties));
+        assertFalse(ReactorContainer.isParticipant(standalone, PLUGIN_KEY, userProperties));
+    }
+
+    @Test
+    public void pluginConfigurationAndExpressionsAreResolved() {
+        MavenProject project = project("expression", execution(null, "shutdown"));
+        Plugin plugin = project.getBuildPlugins().get(1);
+        plugin.setConfiguration(configuration("${fuse.reactor}"));
+        assertFalse(ReactorContainer.isParticipant(project, PLUGIN_KEY, userProperties));
+        project.getProperties().setProperty("fuse.reactor", "true");
+        assertTrue(ReactorContainer.isParticipant(project, PLUGIN_KEY, userProperties));
+        userProperties.setProperty("fuse.reactor", "false");
+        assertFalse(ReactorContainer.isParticipant(project, PLUGIN_KEY, userProperties));
+    }
+
+    @Test
+    public void containerIsRegisteredInTheSession() {
+        assertFalse(ReactorContainer.isRegistered(session));
+        assertNull(ReactorContainer.getLaunchMode(session));
+        assertTrue(ReactorContainer.getBundles(session).isEmpty());
+        ReactorContainer.register(session, LaunchMode.DIRECT.name(), new HashSet<>(Arrays.asList(1L, 2L)));
+        assertTrue(ReactorContainer.isRegistered(session));
+        assertEquals(LaunchMode.DIRECT.name(), ReactorContainer.getLaunchMode(session));
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L)), ReactorContainer.getBundles(session));
+        ReactorContainer.remove(session);
+        assertFalse(ReactorContainer.isRegistered(session));
+    }
+
+    @Test
+    public void containerLeftRunningIsStoppedOnSessionEnd() {
+        AtomicInteger ended = new AtomicInteger();
+        AtomicInteger stopped = new AtomicInteger();
+        MavenExecutionRequest request = new DefaultMavenExecutionRequest();
+        request.setExecutionListener(new AbstractExecutionListener() {
+            @Override
+            public void sessionEnded(ExecutionEvent event) {
+                ended.incrementAndGet();
+            }
+        });
+        ReactorContainer.register(session, LaunchMode.SCRIPT.name(), Collections.<Long>emptySet());
+        ReactorContainer.stopOnSessionEnd(request, session, stopped::incrementAndGet);
+        ReactorContainer.stopOnSessionEnd(request, session, stopped::incrementAndGet);
+        request.getExecutionListener().sessionEnded(null);
+        assertEquals(1, ended.get());
+        assertEquals(1, stopped.get());
+        assertFalse(ReactorContainer.isRegistered(session));
+    }
+
+    @Test
+    public void stoppedContainerIsNotStoppedAgainOnSessionEnd() {
+        AtomicInteger stopped = new AtomicInteger();
+        MavenExecutionRequest request = new DefaultMavenExecutionRequest();
+        ReactorContainer.stopOnSessionEnd(request, session, stopped::incrementAndGet);
+        request.getExecutionListener().sessionEnded(null);
+        assertEquals(0, stopped.get());
+    }
+
+    private static PluginExecution execution(String reactorMode, String... goals) {
+        PluginExecution execution = new PluginExecution();
+        execution.setId(String.join("-", goals));
+        execution.setGoals(Arrays.asList(goals));
+        if (reactorMode != null) {
+            execution.setConfiguration(configuration(reactorMode));
+        }
+        return execution;
+    }
+
+    private static Xpp3Dom configuration(String reactorMode) {
+        Xpp3Dom configuration = new Xpp3Dom("configuration");
+        Xpp3Dom child = new Xpp3Dom("reactorMode");
+        child.setValue(reactorMode);
+        configuration.addChild(child);
+        return configuration;
+    }
+
+    private static MavenProject project(String artifactId, PluginExecution... executions) {
+        Model model = new Model();
+        model.setGroupId("it.imolinfo");
+        model.setArtifactId(artifactId);
+        model.setVersion("1.0");
+        model.setPackaging("bundle");
+        model.setBuild(new Build());
+        Plugin jar = new Plugin();
+        jar.setGroupId("org.apache.maven.plugins");
+        jar.setArtifactId("maven-jar-plugin");
+        model.getBuild().addPlugin(jar);
+        if (executions.length > 0) {
+            String[] coordinates = PLUGIN_KEY.split(":");
+            Plugin plugin = new Plugin();
+            plugin.setGroupId(coordinates[0]);
+            plugin.setArtifactId(coordinates[1]);
+            plugin.setExecutions(Arrays.asList(executions));
+            model.getBuild().addPlugin(plugin);
+        }
+        return new MavenProject(model);
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author giacomo
+ */
+public class StartupHistoryTest {
+
+    private static final Integer WINDOW = 5;
+    private static final Double THRESHOLD = 20d;
+    private static final Long MIN_DELTA = 100L;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void historyIsAppendedAndLoaded() throws Exception {
+        File historyFile = new File(temporaryFolder.getRoot(), "startup-history.txt");
+        StartupHistory.append(historyFile, timings("extract", 1000L, "wait bundles;=", 2000L));
+        StartupHistory.append(historyFile, timings("extract", 1100L));
+        List<Map<String, Long>> history = StartupHistory.load(historyFile);
+        assertEquals(2, history.size());
+        assertEquals(timings("extract", 1000L, "wait_bundles__", 2000L), history.get(0));
+        assertEquals(timings("extract", 1100L), history.get(1));
+    }
+
+    @Test
+    public void missingHistoryIsEmpty() throws Exception {
+        assertTrue(StartupHistory.load(new File(temporaryFolder.getRoot(), "missing.txt")).isEmpty());
+    }
+
+    @Test
+    public void slowerPhaseIsRegression() {
+        List<String> regressions = StartupHistory.regressions(history(1000L, 1000L, 1100L, 900L), timings("boot", 1300L), WINDOW, THRESHOLD, MIN_DELTA);
+        assertEquals(Collections.singletonList("boot: 1300 ms, baseline 1000 ms (+30%)"), regressions);
+    }
+
+    @Test
+    public void slowdownWithinThresholdOrMinDeltaIsNotRegression() {
+        List<Map<String, Long>> history = history(1000L, 1000L, 1000L);
+        assertTrue(StartupHistory.regressions(history, timings("boot", 1150L), WINDOW, THRESHOLD, MIN_DELTA).isEmpty());
+        assertTrue(StartupHistory.regressions(history(100L, 100L, 100L), timings("boot", 190L), WINDOW, THRESHOLD, MIN_DELTA).isEmpty());
+    }
+
+    @Test
+    public void baselineIsTheLastRunsOfTheWindow() {
+        // The old fast runs are out of the window
+        List<Map<String, Long>> history = history(100L, 100L, 100L, 2000L, 2000L, 2000L);
+        assertTrue(StartupHistory.regressions(history, timings("boot", 2100L), 3, THRESHOLD, MIN_DELTA).isEmpty());
+    }
+
+    @Test
+    public void fewRunsHaveNoBaseline() {
+        assertTrue(StartupHistory.regressions(history(100L, 100L), timings("boot", 5000L), WINDOW, THRESHOLD, MIN_DELTA).isEmpty());
+        assertTrue(StartupHistory.regressions(history(100L, 100L, 100L), timings("other", 5000L), WINDOW, THRESHOLD, MIN_DELTA).isEmpty());
+    }
+
+    private static List<Map<String, Long>> history(Long... boots) {
+        List<Map<String, Long>> history = new ArrayList<>();
+        for (Long boot : boots) {
+            history.add(timings("boot", boot));
+        }
+        return history;
+    }
+
+    private static Map<String, Long> timings(Object... phases) {
+        Map<String, Long> timings = new LinkedHashMap<>();
+        for (int i = 0; i < phases.length; i += 2) {
+            timings.put((String) phases[i], (Long) phases[i + 1]);
+        }
+        return timings;
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 Imola Informatica S.P.A..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.imolinfo.maven.plugins.jboss.fuse.utils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ *
+ * @author giacomo
+ */
+public class StatisticsTest {
+
+    private static final Double DELTA = 0d;
+
+    private static final List<Long> VALUES = Arrays.asList(40L, 10L, 30L, 20L, 50L);
+
+    @Test
+    public void percentileIsNearestRank() {
+        assertEquals(10d, Statistics.percentile(VALUES, 20), DELTA);
+        assertEquals(20d, Statistics.percentile(VALUES, 21), DELTA);
+        assertEquals(30d, Statistics.percentile(VALUES, 50), DELTA);
+        assertEquals(50d, Statistics.percentile(VALUES, 95), DELTA);
+    }
+
+    @Test
+    public void boundsAreMinAndMax() {
+        assertEquals(10d, Statistics.min(VALUES), DELTA);
+        assertEquals(50d, Statistics.max(VALUES), DELTA);
+        assertEquals(30d, Statistics.median(VALUES), DELTA);
+    }
+
+    @Test
+    public void singleValueIsEveryPercentile() {
+        List<Integer> values = Collections.singletonList(7);
+        assertEquals(7d, Statistics.percentile(values, 0), DELTA);
+        assertEquals(7d, Statistics.percentile(values, 99), DELTA);
+    }
+
+    @Test
+    public void noValuesHaveNoPercentile() {
+        assertNull(Statistics.percentile(Collections.<Long>emptyList(), 50));
+    }
+
+}